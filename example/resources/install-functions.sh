@@ -39,6 +39,18 @@ FUNC1_USER_CONFIG='{
   "thingIds": ""
 }'
 
+# Producer config of the second function: it sends several messages per input message, they are batched per key so that
+# the sinks can consume the output with a Key_Shared subscription
+FUNC2_PRODUCER_CONFIG='{
+  "batchingConfig": {
+    "enabled": true,
+    "batchingMaxPublishDelayMs": 10,
+    "batchingMaxMessages": 1000,
+    "batchBuilder": "KEY_BASED"
+  },
+  "compressionType": "LZ4"
+}'
+
 # ---------------------------
 # Create Pulsar Function: Ditto Event Management
 # ---------------------------
@@ -59,7 +71,8 @@ pulsar-admin functions create \
   --classname "$FUNC2_CLASS" \
   --jar "$NAR_PATH" \
   --topics-pattern "$FUNC2_TOPIC_PATTERN" \
-  --output "$FUNC2_OUTPUT"
+  --output "$FUNC2_OUTPUT" \
+  --producer-config "$FUNC2_PRODUCER_CONFIG"
 
 # ---------------------------
 # Create Pulsar Sink: Ditto Sink
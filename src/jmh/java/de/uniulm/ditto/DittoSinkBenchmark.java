@@ -0,0 +1,160 @@
+package de.uniulm.ditto;
+
+import com.sun.net.httpserver.HttpServer;
+import de.uniulm.Stubs;
+import de.uniulm.util.DittoClientPool;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.client.DittoClient;
+import org.eclipse.ditto.things.model.Feature;
+import org.eclipse.ditto.things.model.FeatureDefinition;
+import org.eclipse.ditto.things.model.ThingId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Runs DittoSink.write until the record is acknowledged, against stubbed Ditto clients that complete every command
+// immediately. With a cold schema cache every record resolves the schema of its property again (feature retrieve and
+// ThingDescription cache lookup), with a warm cache only the cached converter is used.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DittoSinkBenchmark {
+
+    private static final int PROPERTIES = 100;
+    private static final ThingId THING_ID = ThingId.of("benchmark:thing");
+    private static final String FEATURE_ID = "sensor";
+
+    @Param({"warm", "cold"})
+    public String schemaCache;
+
+    private HttpServer server;
+    private DittoClientPool clientPool;
+    private DittoSink sink;
+    private Map<String, String>[] properties;
+    private PropertyIdentifier[] identifiers;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        StringBuilder description = new StringBuilder("{\"title\": \"benchmark\", \"properties\": {");
+        for (int i = 0; i < PROPERTIES; i++) {
+            description.append(i == 0 ? "" : ",").append("\"value").append(i).append("\": {\"type\": \"number\"}");
+        }
+        byte[] body = description.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/benchmark.jsonld", exchange -> {
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        String url = "http://localhost:" + server.getAddress().getPort() + "/benchmark.jsonld";
+        Feature feature = Feature.newBuilder()
+                .definition(FeatureDefinition.fromIdentifier(url))
+                .withId(FEATURE_ID)
+                .build();
+        CompletableFuture<Object> done = CompletableFuture.completedFuture(null);
+        CompletableFuture<Object> retrieved = CompletableFuture.completedFuture(feature);
+
+        DittoClient client = Stubs.stub(DittoClient.class, Map.of(
+                "putProperty", args -> done,
+                "mergeProperties", args -> done,
+                "retrieve", args -> retrieved));
+        clientPool = new DittoClientPool(1, DittoClientPool.HashingStrategy.CONSISTENT, () -> client);
+
+        sink = new DittoSink();
+        sink.open(new DittoSinkConfig(), Stubs.stub(SinkContext.class, Map.of()), clientPool);
+
+        properties = new Map[PROPERTIES];
+        identifiers = new PropertyIdentifier[PROPERTIES];
+
+        for (int i = 0; i < PROPERTIES; i++) {
+            properties[i] = Map.of(
+                    DittoSinkRequiredProperties.THING_ID.propertyName, THING_ID.toString(),
+                    DittoSinkRequiredProperties.FEATURE_ID.propertyName, FEATURE_ID,
+                    DittoSinkRequiredProperties.PROPERTY.propertyName, "value" + i);
+            identifiers[i] = new PropertyIdentifier(THING_ID, FEATURE_ID, "value" + i);
+
+            // Also loads the ThingDescription into its cache
+            sink.schemaCache.get(identifiers[i]).join();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        sink.close();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        int property = next++ % PROPERTIES;
+
+        if ("cold".equals(schemaCache)) {
+            sink.schemaCache.invalidate(identifiers[property]);
+        }
+
+        BenchmarkRecord record = new BenchmarkRecord("21.5", properties[property]);
+        sink.write(record);
+        record.completion.join();
+    }
+
+    private static class BenchmarkRecord implements Record<String> {
+        private final String value;
+        private final Map<String, String> properties;
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        private BenchmarkRecord(String value, Map<String, String> properties) {
+            this.value = value;
+            this.properties = properties;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public Optional<Long> getEventTime() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void ack() {
+            completion.complete(null);
+        }
+
+        @Override
+        public void fail() {
+            completion.completeExceptionally(new IllegalStateException("Update failed"));
+        }
+    }
+}
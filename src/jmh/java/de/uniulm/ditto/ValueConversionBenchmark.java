@@ -0,0 +1,91 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// Compares the precompiled value converters with the per-record switch and parsing DittoSink used before, and measures
+// the typed path of DittoFeatureUpdateSink which checks JSON values instead of parsing strings
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueConversionBenchmark {
+
+    @Param({"BOOLEAN", "INTEGER", "NUMBER", "STRING", "OBJECT", "ARRAY", "NULL"})
+    public DataSchemaType type;
+
+    @Param({"true", "false"})
+    public boolean valid;
+
+    private ValueConverter converter;
+    private String input;
+    private JsonValue typedInput;
+
+    @Setup
+    public void setUp() {
+        converter = ValueConverters.forType(type);
+        input = switch (type) {
+            case BOOLEAN -> valid ? "true" : "yes";
+            case INTEGER -> valid ? "1234" : "12.5";
+            case NUMBER -> valid ? "1013.25" : "n/a";
+            case OBJECT -> valid ? "{\"x\":1,\"y\":2}" : "x=1";
+            case ARRAY -> valid ? "[1,2,3]" : "1,2,3";
+            default -> "anyValue";
+        };
+        typedInput = switch (type) {
+            case BOOLEAN -> valid ? JsonValue.of(true) : JsonValue.of("yes");
+            case INTEGER -> valid ? JsonValue.of(1234) : JsonValue.of(12.5);
+            case NUMBER -> valid ? JsonValue.of(1013.25) : JsonValue.of("n/a");
+            case OBJECT, ARRAY -> valid ? JsonFactory.readFrom(input) : JsonValue.of(input);
+            default -> JsonValue.of("anyValue");
+        };
+    }
+
+    @Benchmark
+    public Optional<JsonValue> converter() {
+        return converter.convert(input);
+    }
+
+    @Benchmark
+    public Optional<JsonValue> typedConverter() {
+        return converter.convert(typedInput);
+    }
+
+    @Benchmark
+    public JsonValue legacySwitch() {
+        try {
+            return legacyConvert(type, input);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // The conversion DittoSink.putProperty ran for every record before the converters were introduced
+    private static JsonValue legacyConvert(DataSchemaType schema, String value) {
+        return switch (schema) {
+            case BOOLEAN -> JsonValue.of(Boolean.parseBoolean(value));
+            case INTEGER -> JsonValue.of(Integer.parseInt(value));
+            case STRING -> JsonValue.of(value);
+            case OBJECT, ARRAY -> JsonValue.of(value);
+            case NUMBER -> JsonValue.of(Double.parseDouble(value));
+            case NULL -> JsonValue.of("");
+        };
+    }
+}
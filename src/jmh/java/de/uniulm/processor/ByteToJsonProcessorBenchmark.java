@@ -0,0 +1,104 @@
+package de.uniulm.processor;
+
+import de.uniulm.Stubs;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.functions.api.Context;
+import org.apache.pulsar.functions.api.Record;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Runs ByteToJsonProcessor.process on payloads of different widths against a stubbed function context, so the
+// measured time and allocation are the ones of the processor itself
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteToJsonProcessorBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fields;
+
+    @Param({"streaming", "tree"})
+    public String parser;
+
+    @Param({"string", "featureUpdate"})
+    public String outputFormat;
+
+    private ByteToJsonProcessor processor;
+    private Context context;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder("{");
+        StringBuilder mapping = new StringBuilder();
+
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\"field").append(i).append("\":");
+            switch (i % 3) {
+                case 0 -> json.append(i * 1.5);
+                case 1 -> json.append('"').append("value").append(i).append('"');
+                default -> json.append(i % 2 == 0);
+            }
+            mapping.append("field").append(i).append("=feature").append(i % 4).append(';');
+        }
+        payload = json.append('}').toString().getBytes(StandardCharsets.UTF_8);
+
+        Map<String, String> properties = Map.of(
+                ByteToJsonProcessorRequiredProperties.THING_ID.propertyName, "benchmark:thing",
+                ByteToJsonProcessorRequiredProperties.PROPERTY_FEATURE_MAPPING.propertyName, mapping.toString());
+        Optional<Long> eventTime = Optional.of(System.currentTimeMillis());
+        CompletableFuture<MessageId> sent = CompletableFuture.completedFuture(MessageId.latest);
+
+        Map<String, Object> userConfig = new HashMap<>();
+        userConfig.put(ByteToJsonProcessor.PARSER, parser);
+        userConfig.put(ByteToJsonProcessor.OUTPUT_FORMAT, outputFormat);
+
+        Record<?> record = Stubs.stub(Record.class, Map.of(
+                "getProperties", args -> properties,
+                "getEventTime", args -> eventTime));
+        TypedMessageBuilder<?> builder = Stubs.stub(TypedMessageBuilder.class, Map.of(
+                "sendAsync", args -> sent));
+
+        context = Stubs.stub(Context.class, Map.of(
+                "getCurrentRecord", args -> record,
+                "getOutputTopic", args -> "benchmark-output",
+                "newOutputMessage", args -> builder,
+                "getUserConfigValueOrDefault", args -> userConfig.getOrDefault((String) args[0], args[1])));
+
+        processor = new ByteToJsonProcessor();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        processor.close();
+    }
+
+    @Benchmark
+    public Void process() throws Exception {
+        return processor.process(payload, context);
+    }
+}
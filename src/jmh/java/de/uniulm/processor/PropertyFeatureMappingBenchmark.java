@@ -0,0 +1,80 @@
+package de.uniulm.processor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Compares resolving the features of all fields of a message through the compiled mapping with the per-message
+// parsing ByteToJsonProcessor did before
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyFeatureMappingBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int fields;
+
+    private String mappings;
+    private String[] fieldNames;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder();
+        fieldNames = new String[fields];
+
+        for (int i = 0; i < fields; i++) {
+            fieldNames[i] = "Field" + i;
+            builder.append(fieldNames[i]).append("=feature").append(i % 4).append(';');
+        }
+        mappings = builder.toString();
+    }
+
+    @Benchmark
+    public void compiledMapping(Blackhole blackhole) {
+        PropertyFeatureMapping mapping = PropertyFeatureMapping.of(mappings);
+
+        for (String field : fieldNames) {
+            blackhole.consume(mapping.featureIdOf(field));
+        }
+    }
+
+    @Benchmark
+    public void legacyParsing(Blackhole blackhole) {
+        Map<String, String> mapping = legacyParse(mappings);
+
+        for (String field : fieldNames) {
+            blackhole.consume(mapping.get(field.toLowerCase()));
+        }
+    }
+
+    // The parsing ByteToJsonProcessor.getPropertyNameToFeatureId ran for every message
+    private static Map<String, String> legacyParse(String mappings) {
+        Map<String, String> propertyNameToFeatureId = new HashMap<>();
+
+        for (var mapping : mappings.split(";")) {
+            var splitMapping = mapping.split("=");
+
+            if (splitMapping.length != 2) {
+                return null;
+            }
+            propertyNameToFeatureId.put(splitMapping[0].toLowerCase(), splitMapping[1]);
+        }
+        return propertyNameToFeatureId;
+    }
+}
@@ -0,0 +1,582 @@
+package de.uniulm.ditto;
+
+import de.uniulm.AbstractFunction;
+import de.uniulm.util.DittoClientPool;
+import de.uniulm.util.LatencyHistogram;
+import de.uniulm.util.PipelineMetrics;
+import de.uniulm.util.ThingDescriptionCache;
+import de.uniulm.util.ThingDiscovery;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.Sink;
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.client.twin.TwinFeatureHandle;
+import org.eclipse.ditto.json.JsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Shared pipeline of the Ditto sinks: schema resolution, value conversion, ordered lanes and the writer to Ditto.
+// Subclasses only extract the property updates from their record type.
+public abstract class AbstractDittoSink<T> extends AbstractFunction implements Sink<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractDittoSink.class);
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+    private static final String DEAD_LETTER_ERROR_PROPERTY = "ditto-sink-error";
+
+    static final String METRIC_EVENT_TO_ACK = "ditto_event_to_ack_ms";
+    static final String METRIC_SCHEMA_RESOLUTION = "ditto_schema_resolution_ms";
+    static final String METRIC_PUT_LATENCY = "ditto_put_latency_ms";
+    static final String METRIC_SUCCEEDED = "ditto_updates_succeeded";
+    static final String METRIC_FAILED = "ditto_updates_failed";
+    static final String METRIC_IGNORED = "ditto_records_ignored";
+    static final String METRIC_IN_FLIGHT = "ditto_in_flight_updates";
+    static final String METRIC_CONCURRENCY_LIMIT = "ditto_concurrency_limit";
+    static final String METRIC_SCHEMAS_RESTORED = "schema_cache_restored";
+    static final String METRIC_PREWARM_THINGS = "schema_prewarm_things";
+    static final String METRIC_PREWARM_PROPERTIES = "schema_prewarm_properties";
+    static final String METRIC_PREWARM_DURATION = "schema_prewarm_duration_ms";
+    static final String METRIC_RETRIES = "ditto_update_retries";
+    static final String METRIC_RETRIES_PENDING = "ditto_retries_pending";
+    static final String METRIC_DEAD_LETTERED = "ditto_records_dead_lettered";
+    static final String METRIC_SUPERSEDED = "ditto_retries_superseded";
+
+    private DittoClientPool clientPool;
+
+    SchemaCache<ValueConverter> schemaCache;
+
+    private PropertyUpdateWriter writer;
+    private ConcurrencyLimiter inFlightUpdates;
+    private OrderedLaneExecutor lanes;
+    private ExecutorService laneExecutor;
+    private DittoSinkConfig.LaneKey laneKey;
+    private PipelineMetrics metrics;
+    private LatencyHistogram eventToAck;
+    private LatencyHistogram schemaResolution;
+    private LatencyHistogram putLatency;
+    private SchemaSnapshot.Store schemaSnapshotStore;
+    private ScheduledExecutorService schemaSnapshotScheduler;
+    private long savedSchemaVersion;
+    private SchemaPrewarmer prewarmer;
+    private RetryPolicy retryPolicy;
+    private ScheduledExecutorService retryScheduler;
+    private final AtomicInteger retriesPending = new AtomicInteger();
+    private Producer<byte[]> deadLetterProducer;
+    private final AtomicLong sequences = new AtomicLong();
+    final Map<PropertyIdentifier, LatestUpdate> latestUpdates = new ConcurrentHashMap<>();
+
+    protected AbstractDittoSink(List<String> requiredProperties) {
+        super(requiredProperties);
+    }
+
+    @Override
+    public void open(Map<String, Object> config, SinkContext sinkContext) throws Exception {
+        DittoSinkConfig dittoSinkConfig = DittoSinkConfig.load(config);
+
+        open(dittoSinkConfig, sinkContext, DittoClientPool.open(dittoSinkConfig.dittoUsername, dittoSinkConfig.dittoPassword,
+                dittoSinkConfig.websocketEndpoint, dittoSinkConfig.dittoClientPoolSize, dittoSinkConfig.dittoClientHashingStrategy));
+    }
+
+    // Package-private so that tests and benchmarks can run the sink against a pool of stubbed clients
+    void open(DittoSinkConfig dittoSinkConfig, SinkContext sinkContext, DittoClientPool clientPool) {
+        this.clientPool = clientPool;
+        // Rejects an incomplete snapshot config before anything is started, close() releases the pool
+        schemaSnapshotStore = SchemaSnapshot.store(dittoSinkConfig, sinkContext);
+
+        metrics = new PipelineMetrics(sinkContext::recordMetric, Duration.ofSeconds(dittoSinkConfig.metricsIntervalSeconds));
+        eventToAck = metrics.histogram(METRIC_EVENT_TO_ACK);
+        schemaResolution = metrics.histogram(METRIC_SCHEMA_RESOLUTION);
+        putLatency = metrics.histogram(METRIC_PUT_LATENCY);
+
+        ThingDescriptionCache.getInstance().configure(dittoSinkConfig.tdCacheMaxWeightBytes,
+                Duration.ofSeconds(dittoSinkConfig.tdCacheRefreshSeconds));
+        schemaCache = new SchemaCache<>(dittoSinkConfig.schemaCacheMaxSize,
+                Duration.ofSeconds(dittoSinkConfig.schemaCacheTtlSeconds),
+                this::getFeatureType,
+                (name, value) -> {
+                    if (SchemaCache.METRIC_LOAD_LATENCY.equals(name)) {
+                        metrics.histogram(name).recordMillis((long) value);
+                    } else {
+                        metrics.count(name, value);
+                    }
+                });
+
+        if (schemaSnapshotStore != null) {
+            restoreSchemas();
+
+            schemaSnapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "schema-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            schemaSnapshotScheduler.scheduleWithFixedDelay(this::saveSchemas, dittoSinkConfig.schemaSnapshotIntervalSeconds,
+                    dittoSinkConfig.schemaSnapshotIntervalSeconds, TimeUnit.SECONDS);
+        }
+
+        if (!dittoSinkConfig.prewarmNamespaces.isEmpty() || !dittoSinkConfig.prewarmFilter.isEmpty()) {
+            prewarmSchemas(dittoSinkConfig);
+        }
+
+        if (dittoSinkConfig.adaptiveConcurrency) {
+            // Without an initial limit, the window starts fully open and only shrinks once Ditto shows overload
+            int initialLimit = dittoSinkConfig.adaptiveConcurrencyInitialLimit > 0
+                    ? dittoSinkConfig.adaptiveConcurrencyInitialLimit : dittoSinkConfig.maxInFlightUpdates;
+            inFlightUpdates = ConcurrencyLimiter.adaptive(initialLimit,
+                    dittoSinkConfig.adaptiveConcurrencyMinLimit, dittoSinkConfig.maxInFlightUpdates,
+                    dittoSinkConfig.adaptiveConcurrencyLatencyTolerance);
+        } else {
+            inFlightUpdates = ConcurrencyLimiter.fixed(dittoSinkConfig.maxInFlightUpdates);
+        }
+        metrics.gauge(METRIC_IN_FLIGHT, inFlightUpdates::inFlight);
+        metrics.gauge(METRIC_CONCURRENCY_LIMIT, inFlightUpdates::limit);
+
+        if (dittoSinkConfig.batchingEnabled) {
+            writer = new BatchingPropertyUpdateWriter(clientPool, dittoSinkConfig.batchMaxUpdates,
+                    dittoSinkConfig.batchLingerMillis, inFlightUpdates::onSample);
+        } else {
+            writer = new DirectPropertyUpdateWriter(clientPool, inFlightUpdates::onSample);
+        }
+
+        if (dittoSinkConfig.conflationEnabled) {
+            writer = new ConflatingPropertyUpdateWriter(writer, metrics::count);
+        }
+
+        retryPolicy = new RetryPolicy(dittoSinkConfig.retryMaxAttempts, dittoSinkConfig.retryInitialBackoffMillis,
+                dittoSinkConfig.retryMaxBackoffMillis);
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ditto-sink-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metrics.gauge(METRIC_RETRIES_PENDING, retriesPending::get);
+
+        if (!dittoSinkConfig.deadLetterTopic.isEmpty()) {
+            try {
+                deadLetterProducer = sinkContext.getPulsarClient().newProducer(Schema.BYTES)
+                        .topic(dittoSinkConfig.deadLetterTopic)
+                        .create();
+            } catch (PulsarClientException e) {
+                throw new IllegalStateException("Could not create the producer of dead-letter topic " + dittoSinkConfig.deadLetterTopic, e);
+            }
+        }
+
+        laneKey = dittoSinkConfig.laneKey;
+        laneExecutor = new ForkJoinPool(Math.min(dittoSinkConfig.laneCount, Runtime.getRuntime().availableProcessors()));
+        lanes = new OrderedLaneExecutor(dittoSinkConfig.laneCount, dittoSinkConfig.laneQueueDepth, laneExecutor);
+
+        for (int i = 0; i < lanes.laneCount(); i++) {
+            int lane = i;
+            metrics.gauge(OrderedLaneExecutor.METRIC_LANE_QUEUE_LENGTH + lane, () -> lanes.queueLength(lane));
+        }
+    }
+
+    // Only waits if the in-flight window is exhausted, which throttles the consumer until Ditto catches up
+    protected void acquireInFlightSlot() throws InterruptedException {
+        if (!inFlightUpdates.tryAcquire()) {
+            logger.debug("In-flight window of {} updates exhausted, waiting for completions", inFlightUpdates.limit());
+            inFlightUpdates.acquire();
+        }
+    }
+
+    // Resolves the schema of the property, converts the value and sends it to Ditto. The returned future completes
+    // once Ditto acknowledged the update.
+    protected CompletableFuture<Void> update(UpdateAttempt attempt, PropertyIdentifier identifier, Object rawValue,
+                                             Function<ValueConverter, Optional<JsonValue>> conversion) throws InterruptedException {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        if (!attempt.isRetry()) {
+            attempt.identifiers.add(identifier);
+            latestUpdates.merge(identifier, new LatestUpdate(attempt.sequence, 1),
+                    (current, added) -> new LatestUpdate(Math.max(current.sequence(), added.sequence()), current.records() + 1));
+        }
+
+        // Updates of the same lane key reach the writer in their original order, even if the schema of a later
+        // update is resolved first
+        Object key = laneKey == DittoSinkConfig.LaneKey.PROPERTY ? identifier : identifier.getThingId();
+        Supplier<CompletableFuture<?>> task = () -> {
+            // A retry must not overwrite the value of a later record that reached the writer in the meantime
+            if (attempt.isRetry() && isSuperseded(identifier, attempt.sequence)) {
+                logger.debug("Retry of {} is superseded by a later update", identifier);
+                metrics.increment(METRIC_SUPERSEDED);
+                completion.complete(null);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            long resolutionStart = System.nanoTime();
+
+            return schemaCache.get(identifier)
+                    .thenAccept(converter -> {
+                        long writeStart = System.nanoTime();
+                        schemaResolution.recordNanos(writeStart - resolutionStart);
+
+                        JsonValue value = conversion.apply(converter).orElseThrow(() -> new InvalidValueException(
+                                "Value " + rawValue + " does not match the " + converter.getType() + " schema of property " + identifier));
+
+                        logger.debug("Updating feature {} of thing {} by putting value {}", identifier.getFeatureId(), identifier.getThingId(), value);
+                        writer.write(new PropertyUpdate(identifier, value)).whenComplete((a, error) -> {
+                            putLatency.recordNanos(System.nanoTime() - writeStart);
+
+                            if (error != null) {
+                                metrics.increment(METRIC_FAILED);
+                                completion.completeExceptionally(error);
+                            } else {
+                                metrics.increment(METRIC_SUCCEEDED);
+                                completion.complete(null);
+                            }
+                        });
+                    })
+                    .exceptionally(error -> {
+                        metrics.increment(METRIC_FAILED);
+                        completion.completeExceptionally(error);
+                        return null;
+                    });
+        };
+
+        // Retries run on the retry scheduler, which must not wait for room in a full lane
+        CompletableFuture<Void> queued = attempt.isRetry() ? lanes.offer(key, task) : lanes.submit(key, task);
+        queued.whenComplete((a, error) -> {
+            // The lane did not run the update, e.g. because the sink was closed meanwhile
+            if (error != null && completion.completeExceptionally(error)) {
+                metrics.increment(METRIC_FAILED);
+            }
+        });
+
+        return completion;
+    }
+
+    // Runs the updates of a record and completes it once they succeeded. Transient failures run the updates again after
+    // a backoff on the retry scheduler, the record keeps its in-flight slot in the meantime, so a slow Ditto throttles
+    // the consumer instead of causing redeliveries. A retried update whose property was written by a later record in
+    // the meantime is skipped, so a retry never reverts a newer value.
+    protected void dispatch(Record<T> record, Object subject, RecordUpdates updates) throws InterruptedException {
+        UpdateAttempt first = new UpdateAttempt(sequences.incrementAndGet(), 1, ConcurrentHashMap.newKeySet());
+        CompletableFuture<Void> sent;
+        try {
+            sent = updates.send(first);
+        } catch (InterruptedException e) {
+            release(first);
+            throw e;
+        }
+        sent.whenComplete((a, error) -> retryOrComplete(record, subject, updates, first, error));
+    }
+
+    private void retryOrComplete(Record<T> record, Object subject, RecordUpdates updates, UpdateAttempt attempt, Throwable error) {
+        // A retry that finds its lane full uses up an attempt like any other transient failure
+        if (error == null || !retryPolicy.retries(attempt.number, error) || retryScheduler.isShutdown()) {
+            release(attempt);
+            complete(record, subject, error);
+            return;
+        }
+
+        UpdateAttempt next = attempt.next();
+        long backoff = retryPolicy.backoffMillis(attempt.number);
+        logger.debug("Attempt {} to update {} failed, retrying in {} ms", attempt.number, subject, backoff, error);
+        metrics.increment(METRIC_RETRIES);
+        retriesPending.incrementAndGet();
+
+        try {
+            retryScheduler.schedule(() -> {
+                retriesPending.decrementAndGet();
+
+                CompletableFuture<Void> retry;
+                try {
+                    retry = updates.send(next);
+                } catch (Exception e) {
+                    retry = CompletableFuture.failedFuture(e);
+                }
+                retry.whenComplete((a, retryError) -> retryOrComplete(record, subject, updates, next, retryError));
+            }, backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed in the meantime
+            retriesPending.decrementAndGet();
+            release(attempt);
+            complete(record, subject, error);
+        }
+    }
+
+    private boolean isSuperseded(PropertyIdentifier identifier, long sequence) {
+        LatestUpdate latest = latestUpdates.get(identifier);
+        return latest != null && latest.sequence() > sequence;
+    }
+
+    // The latest sequence of a property is kept while any record of the property is pending
+    private void release(UpdateAttempt attempt) {
+        for (PropertyIdentifier identifier : attempt.identifiers) {
+            latestUpdates.computeIfPresent(identifier, (key, latest) -> latest.records() == 1
+                    ? null : new LatestUpdate(latest.sequence(), latest.records() - 1));
+        }
+    }
+
+    protected void ignored(Record<T> record) {
+        metrics.increment(METRIC_IGNORED);
+    }
+
+    protected void complete(Record<T> record, Object subject, Throwable error) {
+        inFlightUpdates.release(error == null);
+
+        if (error != null && deadLetterProducer != null && RetryPolicy.isPermanent(error)) {
+            deadLetter(record, subject, error);
+        } else if (error != null) {
+            logger.error("Error occurred while trying to update {}", subject, error);
+            record.fail();
+        } else {
+            logger.debug("Update of {} successful", subject);
+            record.ack();
+            eventTime(record).ifPresent(eventTime -> eventToAck.recordMillis(System.currentTimeMillis() - eventTime));
+        }
+    }
+
+    // Start of the event-to-ack latency
+    protected Optional<Long> eventTime(Record<T> record) {
+        return record.getEventTime();
+    }
+
+    // Permanently failed records are acknowledged once they are on the dead-letter topic, with their original payload
+    // and properties and the error as additional property
+    private void deadLetter(Record<T> record, Object subject, Throwable error) {
+        logger.warn("Update of {} failed permanently, sending the record to the dead-letter topic: {}", subject,
+                RetryPolicy.unwrap(error).toString());
+
+        byte[] payload = record.getMessage()
+                .map(Message::getData)
+                .orElseGet(() -> String.valueOf(record.getValue()).getBytes(StandardCharsets.UTF_8));
+
+        var message = deadLetterProducer.newMessage()
+                .value(payload)
+                .properties(record.getProperties())
+                .property(DEAD_LETTER_ERROR_PROPERTY, RetryPolicy.unwrap(error).toString());
+        record.getKey().ifPresent(message::key);
+
+        message.sendAsync().whenComplete((messageId, sendError) -> {
+            if (sendError != null) {
+                logger.error("Could not send the record of {} to the dead-letter topic", subject, sendError);
+                record.fail();
+            } else {
+                metrics.increment(METRIC_DEAD_LETTERED);
+                record.ack();
+            }
+        });
+    }
+
+    // The restored schemas are used right away and resolved again in the background on their first use
+    private void restoreSchemas() {
+        try {
+            Optional<byte[]> snapshot = schemaSnapshotStore.load();
+
+            if (snapshot.isPresent()) {
+                Map<PropertyIdentifier, ValueConverter> schemas = SchemaSnapshot.decode(snapshot.get());
+                schemas.forEach(schemaCache::restore);
+                savedSchemaVersion = schemaCache.version();
+                metrics.count(METRIC_SCHEMAS_RESTORED, schemas.size());
+                logger.info("Restored {} property schemas from the snapshot", schemas.size());
+            }
+        } catch (Exception e) {
+            logger.warn("Could not restore the schema snapshot, schemas are resolved on demand", e);
+        }
+    }
+
+    // Waits for the prewarming at most the timeout, the remaining things are prewarmed while the sink runs
+    private void prewarmSchemas(DittoSinkConfig config) {
+        long start = System.nanoTime();
+        AtomicLong duration = new AtomicLong(-1);
+
+        prewarmer = new SchemaPrewarmer(schemaCache, config.schemaCacheMaxSize);
+        CompletableFuture<ThingDiscovery.Result> prewarming = prewarmer
+                .start(clientPool.anyClient(), config.prewarmNamespaces, config.prewarmFilter, config.prewarmConcurrency)
+                .whenComplete((result, error) -> {
+                    duration.set(Duration.ofNanos(System.nanoTime() - start).toMillis());
+
+                    if (error != null) {
+                        logger.warn("Prewarming the schema cache failed after {} property schemas", prewarmer.properties(), error);
+                    } else {
+                        logger.info("Prewarmed {} property schemas of {} things in {} ms", prewarmer.properties(),
+                                prewarmer.things(), duration.get());
+                    }
+                });
+
+        metrics.gauge(METRIC_PREWARM_THINGS, prewarmer::things);
+        metrics.gauge(METRIC_PREWARM_PROPERTIES, prewarmer::properties);
+        // Grows while the prewarming runs
+        metrics.gauge(METRIC_PREWARM_DURATION, () -> duration.get() >= 0
+                ? duration.get() : Duration.ofNanos(System.nanoTime() - start).toMillis());
+
+        try {
+            prewarming.get(config.prewarmTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("Prewarming did not finish within {} s, starting with {} property schemas of {} things",
+                    config.prewarmTimeoutSeconds, prewarmer.properties(), prewarmer.things());
+        } catch (ExecutionException e) {
+            // Logged above, the schemas are resolved on demand
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void saveSchemas() {
+        long version = schemaCache.version();
+
+        if (version == savedSchemaVersion) {
+            return;
+        }
+
+        try {
+            schemaSnapshotStore.save(SchemaSnapshot.encode(schemaCache.snapshot()));
+            savedSchemaVersion = version;
+        } catch (Exception e) {
+            logger.warn("Could not save the schema snapshot", e);
+        }
+    }
+
+    private CompletableFuture<ValueConverter> getFeatureType(PropertyIdentifier identifier) {
+
+        CompletableFuture<ValueConverter> returnValue = new CompletableFuture<>();
+
+        TwinFeatureHandle handle = clientPool
+                .clientFor(identifier.getThingId())
+                .twin()
+                .forId(identifier.getThingId())
+                .forFeature(identifier.getFeatureId());
+
+        handle.retrieve().whenComplete((feature, y) -> {
+            clientPool.report(identifier.getThingId(), y);
+
+            if (y != null) {
+                returnValue.completeExceptionally(y);
+                return;
+            }
+
+            try {
+                String url = feature
+                        .getDefinition()
+                        .orElseThrow()
+                        .getFirstIdentifier()
+                        .getUrl()
+                        .orElseThrow()
+                        .toString();
+
+                ThingDescriptionCache.getInstance().get(url).whenComplete((description, error) -> {
+                    if (error != null) {
+                        returnValue.completeExceptionally(error);
+                        return;
+                    }
+
+                    try {
+                        var wotProperty = description
+                                .getProperties()
+                                .orElseThrow()
+                                .getProperty(identifier.getPropertyName())
+                                .orElseThrow();
+
+                        returnValue.complete(ValueConverters.forProperty(wotProperty));
+                    } catch (Exception e) {
+                        returnValue.completeExceptionally(e);
+                    }
+                });
+            } catch (Exception e) {
+                returnValue.completeExceptionally(e);
+            }
+
+        });
+
+        return returnValue;
+    }
+
+    // Sends the updates of a record, once per attempt
+    @FunctionalInterface
+    protected interface RecordUpdates {
+        CompletableFuture<Void> send(UpdateAttempt attempt) throws InterruptedException;
+    }
+
+    // An attempt to send the updates of a record. All attempts of a record share the sequence number of the record,
+    // which orders it against later records of the same properties.
+    protected static final class UpdateAttempt {
+        private final long sequence;
+        private final int number;
+        // Properties the first attempt sent, all attempts send the same ones
+        private final Set<PropertyIdentifier> identifiers;
+
+        private UpdateAttempt(long sequence, int number, Set<PropertyIdentifier> identifiers) {
+            this.sequence = sequence;
+            this.number = number;
+            this.identifiers = identifiers;
+        }
+
+        private boolean isRetry() {
+            return number > 1;
+        }
+
+        private UpdateAttempt next() {
+            return new UpdateAttempt(sequence, number + 1, identifiers);
+        }
+    }
+
+    record LatestUpdate(long sequence, int records) {
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (prewarmer != null) {
+            prewarmer.cancel();
+        }
+
+        if (writer != null) {
+            writer.close();
+        }
+
+        // Give pending updates the chance to complete before the connection is closed
+        if (inFlightUpdates != null && !inFlightUpdates.awaitIdle(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            logger.warn("Closing sink with {} updates still in flight", inFlightUpdates.inFlight());
+        }
+
+        if (laneExecutor != null) {
+            laneExecutor.shutdown();
+        }
+
+        // Records still waiting for a retry are neither acknowledged nor failed and are redelivered after a restart
+        if (retryScheduler != null) {
+            retryScheduler.shutdownNow();
+        }
+
+        if (deadLetterProducer != null) {
+            deadLetterProducer.close();
+        }
+
+        if (schemaSnapshotScheduler != null) {
+            schemaSnapshotScheduler.shutdown();
+            schemaSnapshotScheduler.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            saveSchemas();
+        }
+
+        if (clientPool != null) {
+            clientPool.close();
+        }
+
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+}
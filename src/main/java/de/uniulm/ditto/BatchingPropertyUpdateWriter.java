@@ -0,0 +1,157 @@
+package de.uniulm.ditto;
+
+import de.uniulm.util.DittoClientPool;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObjectBuilder;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.things.model.ThingId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Buffers the updates of a thing feature and sends them as a single mergeProperties command. A batch is sent once it
+// holds the configured number of updates or once the linger time since its first update has passed. All updates of a
+// batch complete together.
+public class BatchingPropertyUpdateWriter implements PropertyUpdateWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingPropertyUpdateWriter.class);
+
+    private final Map<FeatureKey, Batch> batches = new HashMap<>();
+    private final DittoClientPool clientPool;
+    private final int maxUpdates;
+    private final long lingerMillis;
+    private final ScheduledExecutorService scheduler;
+    private final LatencyListener latencyListener;
+
+    public BatchingPropertyUpdateWriter(DittoClientPool clientPool, int maxUpdates, long lingerMillis,
+                                        LatencyListener latencyListener) {
+        this.clientPool = clientPool;
+        this.latencyListener = latencyListener;
+        this.maxUpdates = maxUpdates;
+        this.lingerMillis = lingerMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ditto-sink-batching");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> write(PropertyUpdate update) {
+        PropertyIdentifier identifier = update.identifier();
+        FeatureKey key = new FeatureKey(identifier.getThingId(), identifier.getFeatureId());
+        Batch ready = null;
+        CompletableFuture<Void> completion;
+
+        synchronized (batches) {
+            Batch batch = batches.get(key);
+
+            if (batch == null) {
+                Batch created = new Batch(key);
+                batches.put(key, created);
+                scheduler.schedule(() -> flush(created), lingerMillis, TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+
+            batch.add(update);
+            completion = batch.completion;
+
+            if (batch.updateCount >= maxUpdates) {
+                batches.remove(key);
+                ready = batch;
+            }
+        }
+
+        if (ready != null) {
+            send(ready);
+        }
+
+        return completion;
+    }
+
+    @Override
+    public void close() {
+        List<Batch> pending;
+
+        synchronized (batches) {
+            pending = new ArrayList<>(batches.values());
+            batches.clear();
+        }
+
+        pending.forEach(this::send);
+        scheduler.shutdown();
+    }
+
+    private void flush(Batch batch) {
+        synchronized (batches) {
+            // The batch has already been sent because it was full
+            if (!batches.remove(batch.key, batch)) {
+                return;
+            }
+        }
+
+        send(batch);
+    }
+
+    private void send(Batch batch) {
+        JsonObjectBuilder properties = JsonFactory.newObjectBuilder();
+        batch.properties.forEach(properties::set);
+
+        logger.debug("Merging {} properties from {} updates into feature {} of thing {}",
+                batch.properties.size(), batch.updateCount, batch.key.featureId(), batch.key.thingId());
+
+        // The linger time of the batch is not part of the latency
+        long start = System.nanoTime();
+
+        try {
+            clientPool
+                    .clientFor(batch.key.thingId())
+                    .twin()
+                    .forId(batch.key.thingId())
+                    .forFeature(batch.key.featureId())
+                    .mergeProperties(properties.build())
+                    .whenComplete((a, error) -> {
+                        latencyListener.onCommand(System.nanoTime() - start, error);
+                        clientPool.report(batch.key.thingId(), error);
+
+                        if (error != null) {
+                            batch.completion.completeExceptionally(error);
+                        } else {
+                            batch.completion.complete(null);
+                        }
+                    });
+        } catch (Exception e) {
+            batch.completion.completeExceptionally(e);
+        }
+    }
+
+    private record FeatureKey(ThingId thingId, String featureId) {
+
+    }
+
+    private static class Batch {
+        private final FeatureKey key;
+        private final Map<String, JsonValue> properties = new LinkedHashMap<>();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private int updateCount;
+
+        private Batch(FeatureKey key) {
+            this.key = key;
+        }
+
+        // Within a batch the latest value of a property wins
+        private void add(PropertyUpdate update) {
+            properties.put(update.identifier().getPropertyName(), update.value());
+            updateCount++;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.base.model.common.HttpStatus;
+import org.eclipse.ditto.base.model.exceptions.DittoRuntimeException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-flight window of the sink, counted in records. An adaptive limiter adjusts its limit to the latency of the
+// commands sent to Ditto (AIMD): the limit shrinks once per round trip if Ditto throttles (408, 429, 503, 504,
+// timeouts) or the latency exceeds the tolerance times the baseline, the lowest latency of the recent window. It grows
+// by one per acknowledged record while the window is in use and the latest command showed no overload. Growth is
+// counted in records like the window, a batched or conflated command completes several records at once. The sink so backs off while the latency of Ditto rises, before the gateway
+// starts to reject commands, and returns to the full window once Ditto recovered.
+class ConcurrencyLimiter {
+
+    private static final double THROTTLED_BACKOFF_RATIO = 0.7;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    private static final long BASELINE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Jitter of a few milliseconds on a fast connection is no sign of overload
+    private static final long MIN_LATENCY_INCREASE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+
+    private double limit;
+    private int inFlight;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinimumNanos = Long.MAX_VALUE;
+    private long windowStart = System.nanoTime();
+    private long lastDecrease;
+    private boolean decreased;
+    private boolean congested;
+
+    private ConcurrencyLimiter(boolean adaptive, int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+        this.adaptive = adaptive;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    static ConcurrencyLimiter fixed(int limit) {
+        return new ConcurrencyLimiter(false, limit, limit, limit, 0);
+    }
+
+    static ConcurrencyLimiter adaptive(int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+        return new ConcurrencyLimiter(true, initialLimit, minLimit, maxLimit, latencyTolerance);
+    }
+
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                available.await();
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A record completed, an acknowledged one may grow the limit
+    void release(boolean acknowledged) {
+        lock.lock();
+        try {
+            if (adaptive && acknowledged && !congested && inFlight * 2 >= limit && limit < maxLimit) {
+                // Only grows while the window is in use, an idle sink would otherwise grow it without evidence
+                limit = Math.min(maxLimit, limit + 1);
+            }
+            inFlight--;
+            // Wakes close() waiting for the window to drain as well
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until nothing is in flight anymore, false if the timeout elapsed before
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the latency of each command sent to Ditto, only shrinks the limit
+    void onSample(long latencyNanos, Throwable error) {
+        if (!adaptive) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+
+            if (error != null) {
+                if (isThrottled(error)) {
+                    congested = true;
+                    decrease(THROTTLED_BACKOFF_RATIO, latencyNanos, now);
+                }
+                return;
+            }
+
+            updateBaseline(latencyNanos, now);
+            congested = latencyNanos > baselineNanos * latencyTolerance && latencyNanos - baselineNanos > MIN_LATENCY_INCREASE_NANOS;
+
+            if (congested) {
+                decrease(LATENCY_BACKOFF_RATIO, latencyNanos, now);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The commands that were sent before a decrease report the same overload, only one decrease per round trip
+    private void decrease(double ratio, long latencyNanos, long now) {
+        if (decreased && now - lastDecrease < latencyNanos) {
+            return;
+        }
+        decreased = true;
+        lastDecrease = now;
+        limit = Math.max(minLimit, limit * ratio);
+    }
+
+    // The baseline follows a lasting change of the latency, e.g. after Ditto was scaled, with the next window
+    private void updateBaseline(long latencyNanos, long now) {
+        windowMinimumNanos = Math.min(windowMinimumNanos, latencyNanos);
+
+        if (now - windowStart > BASELINE_WINDOW_NANOS) {
+            baselineNanos = windowMinimumNanos;
+            windowMinimumNanos = latencyNanos;
+            windowStart = now;
+        } else {
+            baselineNanos = Math.min(baselineNanos, latencyNanos);
+        }
+    }
+
+    static boolean isThrottled(Throwable error) {
+        Throwable cause = RetryPolicy.unwrap(error);
+
+        if (cause instanceof DittoRuntimeException dittoException) {
+            HttpStatus status = dittoException.getHttpStatus();
+            return HttpStatus.REQUEST_TIMEOUT.equals(status)
+                    || HttpStatus.TOO_MANY_REQUESTS.equals(status)
+                    || HttpStatus.SERVICE_UNAVAILABLE.equals(status)
+                    || HttpStatus.GATEWAY_TIMEOUT.equals(status);
+        }
+
+        return cause instanceof TimeoutException;
+    }
+}
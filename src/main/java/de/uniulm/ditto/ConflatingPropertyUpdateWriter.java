@@ -0,0 +1,100 @@
+package de.uniulm.ditto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.ObjDoubleConsumer;
+
+// Keeps at most one update per property in flight. Updates that arrive in the meantime replace each other, only the
+// newest one is sent once the in-flight update completed. The superseded updates complete together with it, so the
+// load on Ditto depends on the number of distinct properties instead of the message rate.
+public class ConflatingPropertyUpdateWriter implements PropertyUpdateWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConflatingPropertyUpdateWriter.class);
+
+    static final String METRIC_CONFLATED = "ditto_updates_conflated";
+
+    private final Map<PropertyIdentifier, Pending> inFlight = new HashMap<>();
+    private final PropertyUpdateWriter delegate;
+    private final ObjDoubleConsumer<String> metrics;
+
+    public ConflatingPropertyUpdateWriter(PropertyUpdateWriter delegate, ObjDoubleConsumer<String> metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletableFuture<Void> write(PropertyUpdate update) {
+        PropertyIdentifier identifier = update.identifier();
+
+        synchronized (inFlight) {
+            if (inFlight.containsKey(identifier)) {
+                Pending pending = inFlight.get(identifier);
+
+                if (pending == null) {
+                    pending = new Pending();
+                    inFlight.put(identifier, pending);
+                } else {
+                    logger.debug("Conflating update of property {}", identifier);
+                    metrics.accept(METRIC_CONFLATED, 1);
+                }
+
+                pending.update = update;
+                return pending.completion;
+            }
+
+            // No update of this property is in flight, a null value marks it as in flight without a pending update
+            inFlight.put(identifier, null);
+        }
+
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        send(update, completion);
+        return completion;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private void send(PropertyUpdate update, CompletableFuture<Void> completion) {
+        CompletableFuture<Void> sent;
+
+        try {
+            sent = delegate.write(update);
+        } catch (Exception e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+
+        sent.whenComplete((a, error) -> {
+            if (error != null) {
+                completion.completeExceptionally(error);
+            } else {
+                completion.complete(null);
+            }
+
+            Pending next;
+
+            synchronized (inFlight) {
+                next = inFlight.get(update.identifier());
+
+                if (next == null) {
+                    inFlight.remove(update.identifier());
+                    return;
+                }
+
+                inFlight.put(update.identifier(), null);
+            }
+
+            send(next.update, next.completion);
+        });
+    }
+
+    private static class Pending {
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private PropertyUpdate update;
+    }
+}
@@ -0,0 +1,35 @@
+package de.uniulm.ditto;
+
+import de.uniulm.util.DittoClientPool;
+
+import java.util.concurrent.CompletableFuture;
+
+// Sends every update as its own putProperty command
+public class DirectPropertyUpdateWriter implements PropertyUpdateWriter {
+
+    private final DittoClientPool clientPool;
+    private final LatencyListener latencyListener;
+
+    public DirectPropertyUpdateWriter(DittoClientPool clientPool, LatencyListener latencyListener) {
+        this.clientPool = clientPool;
+        this.latencyListener = latencyListener;
+    }
+
+    @Override
+    public CompletableFuture<Void> write(PropertyUpdate update) {
+        PropertyIdentifier identifier = update.identifier();
+        long start = System.nanoTime();
+
+        return clientPool
+                .clientFor(identifier.getThingId())
+                .twin()
+                .forId(identifier.getThingId())
+                .forFeature(identifier.getFeatureId())
+                .putProperty(identifier.getPropertyName(), update.value())
+                .toCompletableFuture()
+                .whenComplete((a, error) -> {
+                    latencyListener.onCommand(System.nanoTime() - start, error);
+                    clientPool.report(identifier.getThingId(), error);
+                });
+    }
+}
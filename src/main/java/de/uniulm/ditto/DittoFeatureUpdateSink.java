@@ -0,0 +1,108 @@
+package de.uniulm.ditto;
+
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.annotations.Connector;
+import org.apache.pulsar.io.core.annotations.IOType;
+import org.eclipse.ditto.json.JsonArrayBuilder;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObjectBuilder;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.things.model.ThingId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+@Connector(
+        name = "ditto-feature-update-sink",
+        type = IOType.SINK,
+        help = "This Sink updates the properties of an Eclipse Ditto thing feature from structured FeatureUpdate " +
+                "records (JSON schema). The values keep their JSON types and are not parsed from strings.",
+        configClass = DittoSinkConfig.class)
+public class DittoFeatureUpdateSink extends AbstractDittoSink<FeatureUpdate> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DittoFeatureUpdateSink.class);
+
+    public DittoFeatureUpdateSink() {
+        super(List.of());
+    }
+
+    @Override
+    public void write(Record<FeatureUpdate> record) throws Exception {
+        FeatureUpdate featureUpdate = record.getValue();
+
+        if (featureUpdate == null || featureUpdate.getThingId() == null || featureUpdate.getFeatureId() == null
+                || featureUpdate.getProperties() == null) {
+            logger.warn("Ignoring incomplete feature update record");
+            ignored(record);
+            return;
+        }
+
+        logger.debug("Received update of {} properties for feature {} of thing {}", featureUpdate.getProperties().size(),
+                featureUpdate.getFeatureId(), featureUpdate.getThingId());
+
+        ThingId thingId = ThingId.of(featureUpdate.getThingId());
+
+        acquireInFlightSlot();
+
+        // The record is acknowledged once all of its properties are persisted
+        dispatch(record, "feature " + featureUpdate.getFeatureId() + " of thing " + thingId, attempt -> {
+            List<CompletableFuture<Void>> updates = new ArrayList<>(featureUpdate.getProperties().size());
+
+            for (Map.Entry<String, Object> property : featureUpdate.getProperties().entrySet()) {
+                PropertyIdentifier identifier = new PropertyIdentifier(thingId, featureUpdate.getFeatureId(), property.getKey());
+                JsonValue value = toJsonValue(property.getValue());
+
+                updates.add(update(attempt, identifier, property.getValue(), converter -> converter.convert(value)));
+            }
+
+            return CompletableFuture.allOf(updates.toArray(new CompletableFuture[0]));
+        });
+    }
+
+    // The timestamp of the update, records of older producers without one fall back to the event time of the message
+    @Override
+    protected Optional<Long> eventTime(Record<FeatureUpdate> record) {
+        FeatureUpdate featureUpdate = record.getValue();
+        return featureUpdate != null && featureUpdate.getTimestamp() > 0
+                ? Optional.of(featureUpdate.getTimestamp()) : record.getEventTime();
+    }
+
+    static JsonValue toJsonValue(Object value) {
+        if (value == null) {
+            return JsonValue.nullLiteral();
+        }
+        if (value instanceof JsonValue json) {
+            return json;
+        }
+        if (value instanceof Boolean bool) {
+            return JsonValue.of(bool);
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return JsonValue.of(((Number) value).intValue());
+        }
+        if (value instanceof Long number) {
+            return JsonValue.of(number);
+        }
+        if (value instanceof Number number) {
+            return JsonValue.of(number.doubleValue());
+        }
+        if (value instanceof Map<?, ?> map) {
+            JsonObjectBuilder builder = JsonFactory.newObjectBuilder();
+            map.forEach((key, nested) -> builder.set(String.valueOf(key), toJsonValue(nested)));
+            return builder.build();
+        }
+        if (value instanceof Collection<?> collection) {
+            JsonArrayBuilder builder = JsonFactory.newArrayBuilder();
+            collection.forEach(nested -> builder.add(toJsonValue(nested)));
+            return builder.build();
+        }
+        // Strings and Avro Utf8 values
+        return JsonValue.of(value.toString());
+    }
+}
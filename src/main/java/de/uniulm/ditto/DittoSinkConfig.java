@@ -2,6 +2,8 @@ package de.uniulm.ditto;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Strings;
+import de.uniulm.util.DittoClientPool;
+import de.uniulm.util.ThingDescriptionCache;
 import org.apache.pulsar.io.core.annotations.FieldDoc;
 
 import java.io.IOException;
@@ -29,6 +31,209 @@ public class DittoSinkConfig implements Serializable {
             help = "")
     String websocketEndpoint;
 
+    @FieldDoc(
+            required = false,
+            defaultValue = "10000",
+            help = "The maximum number of property schemas that are kept in the schema cache.")
+    int schemaCacheMaxSize = 10000;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "3600",
+            help = "The time in seconds after which a cached property schema is resolved again.")
+    long schemaCacheTtlSeconds = 3600;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "16777216",
+            help = "The maximum total size in bytes of the ThingDescriptions kept in the process-wide cache.")
+    long tdCacheMaxWeightBytes = ThingDescriptionCache.DEFAULT_MAX_WEIGHT_BYTES;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "300",
+            help = "The time in seconds after which a cached ThingDescription is revalidated in the background.")
+    long tdCacheRefreshSeconds = ThingDescriptionCache.DEFAULT_REFRESH_AFTER.toSeconds();
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "1000",
+            help = "The maximum number of property updates that are sent to Ditto but not yet acknowledged. " +
+                    "Once reached, new records are only accepted after pending updates completed.")
+    int maxInFlightUpdates = 1000;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "false",
+            help = "Whether the number of updates in flight adapts to the latency and the throttling responses of " +
+                    "Ditto, between adaptiveConcurrencyMinLimit and maxInFlightUpdates. If disabled, the window is " +
+                    "fixed at maxInFlightUpdates.")
+    boolean adaptiveConcurrency = false;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "0",
+            help = "The number of updates in flight the adaptive window starts with. 0 starts with maxInFlightUpdates.")
+    int adaptiveConcurrencyInitialLimit = 0;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "8",
+            help = "The number of updates in flight the adaptive window does not shrink below.")
+    int adaptiveConcurrencyMinLimit = 8;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "2.0",
+            help = "The factor by which the latency of an update may exceed the lowest recent latency before the " +
+                    "adaptive window shrinks.")
+    double adaptiveConcurrencyLatencyTolerance = 2.0;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "false",
+            help = "If enabled, updates of the same thing feature are buffered and sent as one merge command.")
+    boolean batchingEnabled = false;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "100",
+            help = "The number of buffered updates of a thing feature after which the batch is sent.")
+    int batchMaxUpdates = 100;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "50",
+            help = "The time in milliseconds after the first buffered update of a thing feature after which the batch " +
+                    "is sent, even if it is not full.")
+    long batchLingerMillis = 50;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "false",
+            help = "If enabled, only the newest value of a property is sent while an update of that property is in " +
+                    "flight. Superseded records are acknowledged once the newer value is persisted.")
+    boolean conflationEnabled = false;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "1",
+            help = "The number of WebSocket connections to Ditto. The updates of a thing always use the same connection.")
+    int dittoClientPoolSize = 1;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "CONSISTENT",
+            help = "How things are assigned to the Ditto connections: CONSISTENT (hash ring) or MODULO.")
+    DittoClientPool.HashingStrategy dittoClientHashingStrategy = DittoClientPool.HashingStrategy.CONSISTENT;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "16",
+            help = "The number of lanes that process records in parallel. Records with the same lane key are " +
+                    "processed in order on the same lane.")
+    int laneCount = 16;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "1000",
+            help = "The maximum number of records waiting in the queue of a lane.")
+    int laneQueueDepth = 1000;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "THING",
+            help = "Which records are kept in order: THING (all records of a thing) or PROPERTY (all records of a property).")
+    LaneKey laneKey = LaneKey.THING;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "10",
+            help = "The interval in seconds in which the aggregated metrics of the sink are published.")
+    long metricsIntervalSeconds = 10;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "NONE",
+            help = "Where the resolved property schemas are saved to be restored after a restart: NONE, STATE " +
+                    "(Pulsar function state) or FILE (schemaSnapshotDirectory).")
+    SchemaSnapshotMode schemaSnapshot = SchemaSnapshotMode.NONE;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "",
+            help = "The directory the schema snapshot files are written to, required if schemaSnapshot is FILE.")
+    String schemaSnapshotDirectory = "";
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "60",
+            help = "The interval in seconds in which the schema snapshot is saved if the schemas changed.")
+    long schemaSnapshotIntervalSeconds = 60;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "",
+            help = "Comma separated namespaces whose property schemas are resolved when the sink opens. Prewarming is " +
+                    "disabled if neither prewarmNamespaces nor prewarmFilter is set.")
+    String prewarmNamespaces = "";
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "",
+            help = "RQL filter of the things whose property schemas are resolved when the sink opens.")
+    String prewarmFilter = "";
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "16",
+            help = "The maximum number of things whose schemas are resolved concurrently while prewarming.")
+    int prewarmConcurrency = 16;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "30",
+            help = "The time in seconds the sink waits for the prewarming before it starts anyway. The remaining " +
+                    "things are prewarmed in the background.")
+    long prewarmTimeoutSeconds = 30;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "5",
+            help = "The maximum number of attempts to write a record to Ditto if it fails transiently, e.g. by a " +
+                    "timeout or a 429 or 503 response. 1 disables retries.")
+    int retryMaxAttempts = 5;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "200",
+            help = "The backoff in milliseconds before the first retry, it doubles with each further retry.")
+    long retryInitialBackoffMillis = 200;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "10000",
+            help = "The maximum backoff in milliseconds between two retries.")
+    long retryMaxBackoffMillis = 10000;
+
+    @FieldDoc(
+            required = false,
+            defaultValue = "",
+            help = "The topic records are sent to if they fail permanently, e.g. a value that does not match the " +
+                    "schema of its property. Without a topic, such records are failed like transient failures.")
+    String deadLetterTopic = "";
+
+    public enum LaneKey {
+        THING,
+        PROPERTY
+    }
+
+    public enum SchemaSnapshotMode {
+        NONE,
+        STATE,
+        FILE
+    }
+
     public static DittoSinkConfig load(Map<String, Object> map) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
         return mapper.readValue(mapper.writeValueAsString(map), DittoSinkConfig.class);
@@ -57,4 +262,244 @@ public class DittoSinkConfig implements Serializable {
     public void setWebsocketEndpoint(String websocketEndpoint) {
         this.websocketEndpoint = websocketEndpoint;
     }
+
+    public int getSchemaCacheMaxSize() {
+        return schemaCacheMaxSize;
+    }
+
+    public void setSchemaCacheMaxSize(int schemaCacheMaxSize) {
+        this.schemaCacheMaxSize = schemaCacheMaxSize;
+    }
+
+    public long getSchemaCacheTtlSeconds() {
+        return schemaCacheTtlSeconds;
+    }
+
+    public void setSchemaCacheTtlSeconds(long schemaCacheTtlSeconds) {
+        this.schemaCacheTtlSeconds = schemaCacheTtlSeconds;
+    }
+
+    public long getTdCacheMaxWeightBytes() {
+        return tdCacheMaxWeightBytes;
+    }
+
+    public void setTdCacheMaxWeightBytes(long tdCacheMaxWeightBytes) {
+        this.tdCacheMaxWeightBytes = tdCacheMaxWeightBytes;
+    }
+
+    public long getTdCacheRefreshSeconds() {
+        return tdCacheRefreshSeconds;
+    }
+
+    public void setTdCacheRefreshSeconds(long tdCacheRefreshSeconds) {
+        this.tdCacheRefreshSeconds = tdCacheRefreshSeconds;
+    }
+
+    public int getMaxInFlightUpdates() {
+        return maxInFlightUpdates;
+    }
+
+    public void setMaxInFlightUpdates(int maxInFlightUpdates) {
+        this.maxInFlightUpdates = maxInFlightUpdates;
+    }
+
+    public boolean isBatchingEnabled() {
+        return batchingEnabled;
+    }
+
+    public void setBatchingEnabled(boolean batchingEnabled) {
+        this.batchingEnabled = batchingEnabled;
+    }
+
+    public int getBatchMaxUpdates() {
+        return batchMaxUpdates;
+    }
+
+    public void setBatchMaxUpdates(int batchMaxUpdates) {
+        this.batchMaxUpdates = batchMaxUpdates;
+    }
+
+    public long getBatchLingerMillis() {
+        return batchLingerMillis;
+    }
+
+    public void setBatchLingerMillis(long batchLingerMillis) {
+        this.batchLingerMillis = batchLingerMillis;
+    }
+
+    public boolean isConflationEnabled() {
+        return conflationEnabled;
+    }
+
+    public void setConflationEnabled(boolean conflationEnabled) {
+        this.conflationEnabled = conflationEnabled;
+    }
+
+    public int getDittoClientPoolSize() {
+        return dittoClientPoolSize;
+    }
+
+    public void setDittoClientPoolSize(int dittoClientPoolSize) {
+        this.dittoClientPoolSize = dittoClientPoolSize;
+    }
+
+    public DittoClientPool.HashingStrategy getDittoClientHashingStrategy() {
+        return dittoClientHashingStrategy;
+    }
+
+    public void setDittoClientHashingStrategy(DittoClientPool.HashingStrategy dittoClientHashingStrategy) {
+        this.dittoClientHashingStrategy = dittoClientHashingStrategy;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public void setLaneCount(int laneCount) {
+        this.laneCount = laneCount;
+    }
+
+    public int getLaneQueueDepth() {
+        return laneQueueDepth;
+    }
+
+    public void setLaneQueueDepth(int laneQueueDepth) {
+        this.laneQueueDepth = laneQueueDepth;
+    }
+
+    public LaneKey getLaneKey() {
+        return laneKey;
+    }
+
+    public void setLaneKey(LaneKey laneKey) {
+        this.laneKey = laneKey;
+    }
+
+    public long getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    public void setMetricsIntervalSeconds(long metricsIntervalSeconds) {
+        this.metricsIntervalSeconds = metricsIntervalSeconds;
+    }
+
+    public SchemaSnapshotMode getSchemaSnapshot() {
+        return schemaSnapshot;
+    }
+
+    public void setSchemaSnapshot(SchemaSnapshotMode schemaSnapshot) {
+        this.schemaSnapshot = schemaSnapshot;
+    }
+
+    public String getSchemaSnapshotDirectory() {
+        return schemaSnapshotDirectory;
+    }
+
+    public void setSchemaSnapshotDirectory(String schemaSnapshotDirectory) {
+        this.schemaSnapshotDirectory = schemaSnapshotDirectory;
+    }
+
+    public long getSchemaSnapshotIntervalSeconds() {
+        return schemaSnapshotIntervalSeconds;
+    }
+
+    public void setSchemaSnapshotIntervalSeconds(long schemaSnapshotIntervalSeconds) {
+        this.schemaSnapshotIntervalSeconds = schemaSnapshotIntervalSeconds;
+    }
+
+    public String getPrewarmNamespaces() {
+        return prewarmNamespaces;
+    }
+
+    public void setPrewarmNamespaces(String prewarmNamespaces) {
+        this.prewarmNamespaces = prewarmNamespaces;
+    }
+
+    public String getPrewarmFilter() {
+        return prewarmFilter;
+    }
+
+    public void setPrewarmFilter(String prewarmFilter) {
+        this.prewarmFilter = prewarmFilter;
+    }
+
+    public int getPrewarmConcurrency() {
+        return prewarmConcurrency;
+    }
+
+    public void setPrewarmConcurrency(int prewarmConcurrency) {
+        this.prewarmConcurrency = prewarmConcurrency;
+    }
+
+    public long getPrewarmTimeoutSeconds() {
+        return prewarmTimeoutSeconds;
+    }
+
+    public void setPrewarmTimeoutSeconds(long prewarmTimeoutSeconds) {
+        this.prewarmTimeoutSeconds = prewarmTimeoutSeconds;
+    }
+
+    public int getRetryMaxAttempts() {
+        return retryMaxAttempts;
+    }
+
+    public void setRetryMaxAttempts(int retryMaxAttempts) {
+        this.retryMaxAttempts = retryMaxAttempts;
+    }
+
+    public long getRetryInitialBackoffMillis() {
+        return retryInitialBackoffMillis;
+    }
+
+    public void setRetryInitialBackoffMillis(long retryInitialBackoffMillis) {
+        this.retryInitialBackoffMillis = retryInitialBackoffMillis;
+    }
+
+    public long getRetryMaxBackoffMillis() {
+        return retryMaxBackoffMillis;
+    }
+
+    public void setRetryMaxBackoffMillis(long retryMaxBackoffMillis) {
+        this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+    }
+
+    public String getDeadLetterTopic() {
+        return deadLetterTopic;
+    }
+
+    public void setDeadLetterTopic(String deadLetterTopic) {
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    public int getAdaptiveConcurrencyInitialLimit() {
+        return adaptiveConcurrencyInitialLimit;
+    }
+
+    public void setAdaptiveConcurrencyInitialLimit(int adaptiveConcurrencyInitialLimit) {
+        this.adaptiveConcurrencyInitialLimit = adaptiveConcurrencyInitialLimit;
+    }
+
+    public int getAdaptiveConcurrencyMinLimit() {
+        return adaptiveConcurrencyMinLimit;
+    }
+
+    public void setAdaptiveConcurrencyMinLimit(int adaptiveConcurrencyMinLimit) {
+        this.adaptiveConcurrencyMinLimit = adaptiveConcurrencyMinLimit;
+    }
+
+    public double getAdaptiveConcurrencyLatencyTolerance() {
+        return adaptiveConcurrencyLatencyTolerance;
+    }
+
+    public void setAdaptiveConcurrencyLatencyTolerance(double adaptiveConcurrencyLatencyTolerance) {
+        this.adaptiveConcurrencyLatencyTolerance = adaptiveConcurrencyLatencyTolerance;
+    }
 }
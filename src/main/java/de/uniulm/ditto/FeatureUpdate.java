@@ -0,0 +1,54 @@
+package de.uniulm.ditto;
+
+import java.util.Map;
+
+// Structured record of the typed sink: all property values of a thing feature with their JSON types preserved
+public class FeatureUpdate {
+
+    private String thingId;
+    private String featureId;
+    private Map<String, Object> properties;
+    private long timestamp;
+
+    public FeatureUpdate() {
+    }
+
+    public FeatureUpdate(String thingId, String featureId, Map<String, Object> properties, long timestamp) {
+        this.thingId = thingId;
+        this.featureId = featureId;
+        this.properties = properties;
+        this.timestamp = timestamp;
+    }
+
+    public String getThingId() {
+        return thingId;
+    }
+
+    public void setThingId(String thingId) {
+        this.thingId = thingId;
+    }
+
+    public String getFeatureId() {
+        return featureId;
+    }
+
+    public void setFeatureId(String featureId) {
+        this.featureId = featureId;
+    }
+
+    public Map<String, Object> getProperties() {
+        return properties;
+    }
+
+    public void setProperties(Map<String, Object> properties) {
+        this.properties = properties;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,10 @@
+package de.uniulm.ditto;
+
+// Signals a record value that does not match the schema of its property. Retrying such a record cannot succeed.
+public class InvalidValueException extends RuntimeException {
+
+    public InvalidValueException(String message) {
+        // Invalid values are expected input, the stack trace would only cost time
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,149 @@
+package de.uniulm.ditto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Runs asynchronous tasks on a fixed number of lanes. Tasks with the same key always run on the same lane, and a lane
+// only starts a task once the future of the previous one completed. Different lanes run in parallel on the executor.
+public class OrderedLaneExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderedLaneExecutor.class);
+
+    static final String METRIC_LANE_QUEUE_LENGTH = "ditto_lane_queue_length_";
+
+    private final Lane[] lanes;
+    private final Executor executor;
+
+    public OrderedLaneExecutor(int laneCount, int queueDepth, Executor executor) {
+        if (laneCount <= 0 || queueDepth <= 0) {
+            throw new IllegalArgumentException("laneCount and queueDepth have to be positive");
+        }
+
+        this.executor = executor;
+        this.lanes = new Lane[laneCount];
+
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(queueDepth);
+        }
+    }
+
+    // Blocks while the queue of the lane is full. The returned future completes with the future of the task, it fails
+    // if the task could not run because the executor was shut down.
+    public CompletableFuture<Void> submit(Object key, Supplier<CompletableFuture<?>> task) throws InterruptedException {
+        Lane lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+        Task queued = new Task(task, new CompletableFuture<>());
+        lane.queue.put(queued);
+        lane.schedule();
+        return queued.done;
+    }
+
+    // Does not block, the returned future fails with a RejectedExecutionException if the queue of the lane is full
+    public CompletableFuture<Void> offer(Object key, Supplier<CompletableFuture<?>> task) {
+        Lane lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+        Task queued = new Task(task, new CompletableFuture<>());
+
+        if (!lane.queue.offer(queued)) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Queue of the lane of " + key + " is full"));
+        }
+        lane.schedule();
+        return queued.done;
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    public int queueLength(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    private record Task(Supplier<CompletableFuture<?>> supplier, CompletableFuture<Void> done) {
+    }
+
+    private class Lane {
+        private final BlockingQueue<Task> queue;
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Lane(int queueDepth) {
+            this.queue = new ArrayBlockingQueue<>(queueDepth);
+        }
+
+        private void schedule() {
+            if (running.compareAndSet(false, true)) {
+                execute();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this::runNext);
+            } catch (RejectedExecutionException e) {
+                abort(e);
+            }
+        }
+
+        // The executor was shut down, the queued tasks will never run. Their futures are failed instead of dropped,
+        // so that the records waiting for them are failed and redelivered.
+        private void abort(RejectedExecutionException cause) {
+            List<Task> dropped = new ArrayList<>();
+            queue.drainTo(dropped);
+            running.set(false);
+
+            if (!dropped.isEmpty()) {
+                logger.warn("Ordered lane executor is shut down, failing {} queued tasks", dropped.size());
+            }
+            dropped.forEach(task -> task.done.completeExceptionally(
+                    new IllegalStateException("Ordered lane executor is shut down", cause)));
+        }
+
+        private void runNext() {
+            while (true) {
+                Task task = queue.poll();
+
+                if (task == null) {
+                    running.set(false);
+
+                    // A task may have been queued after poll() but before running was reset
+                    if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+
+                CompletableFuture<?> completion;
+
+                try {
+                    completion = task.supplier.get();
+                } catch (Exception e) {
+                    logger.error("Task of ordered lane failed", e);
+                    task.done.completeExceptionally(e);
+                    continue;
+                }
+
+                completion.whenComplete((a, error) -> {
+                    if (error != null) {
+                        task.done.completeExceptionally(error);
+                    } else {
+                        task.done.complete(null);
+                    }
+                });
+
+                // Wait for asynchronous tasks without blocking the executor thread
+                if (!completion.isDone()) {
+                    completion.whenComplete((a, error) -> execute());
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,18 @@ public class PropertyIdentifier {
         this.propertyName = propertyName;
     }
 
+    public ThingId getThingId() {
+        return thingId;
+    }
+
+    public String getFeatureId() {
+        return featureId;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
@@ -27,4 +39,9 @@ public class PropertyIdentifier {
     public int hashCode() {
         return Objects.hash(thingId, propertyName, featureId);
     }
+
+    @Override
+    public String toString() {
+        return thingId + "/" + featureId + "/" + propertyName;
+    }
 }
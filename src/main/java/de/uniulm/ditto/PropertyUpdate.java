@@ -0,0 +1,7 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.json.JsonValue;
+
+public record PropertyUpdate(PropertyIdentifier identifier, JsonValue value) {
+
+}
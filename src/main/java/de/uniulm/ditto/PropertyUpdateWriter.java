@@ -0,0 +1,18 @@
+package de.uniulm.ditto;
+
+import java.util.concurrent.CompletableFuture;
+
+// Sends property updates to Ditto. The returned future completes once Ditto acknowledged the update.
+public interface PropertyUpdateWriter {
+
+    CompletableFuture<Void> write(PropertyUpdate update);
+
+    default void close() {
+    }
+
+    // Receives the latency of each command a writer sent to Ditto, without the time an update waited in the writer
+    @FunctionalInterface
+    interface LatencyListener {
+        void onCommand(long latencyNanos, Throwable error);
+    }
+}
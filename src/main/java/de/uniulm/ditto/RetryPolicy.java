@@ -0,0 +1,61 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.base.model.common.HttpStatus;
+import org.eclipse.ditto.base.model.exceptions.DittoRuntimeException;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Decides whether a failed record is retried and how long it waits before. Failures that depend on the load of Ditto
+// or the network are transient, failures that depend on the record itself (a value that does not match its schema, a
+// property that is not described, a command Ditto rejects) are permanent and would fail the same way again.
+class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    // Whether another attempt follows the given failed one, attempts are counted from 1
+    boolean retries(int attempt, Throwable error) {
+        return attempt < maxAttempts && !isPermanent(error);
+    }
+
+    // Exponential backoff, the upper half is randomized so that records failed by the same outage do not all return
+    // to Ditto at the same time
+    long backoffMillis(int attempt) {
+        long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    static boolean isPermanent(Throwable error) {
+        Throwable cause = unwrap(error);
+
+        if (cause instanceof DittoRuntimeException dittoException) {
+            HttpStatus status = dittoException.getHttpStatus();
+            return status.isClientError()
+                    && !HttpStatus.REQUEST_TIMEOUT.equals(status)
+                    && !HttpStatus.TOO_MANY_REQUESTS.equals(status);
+        }
+
+        // Schema mismatch, a property without description or a value that cannot be parsed
+        return cause instanceof InvalidValueException
+                || cause instanceof NoSuchElementException
+                || cause instanceof IllegalArgumentException;
+    }
+
+    static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,233 @@
+package de.uniulm.ditto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+
+// Bounded cache of the resolved WoT schema of feature properties. Entries expire after the configured TTL and the oldest
+// entries are evicted once the size limit is exceeded. Concurrent misses for the same identifier share a single load.
+// Entries restored from a snapshot are served right away and loaded again in the background on their first use.
+public class SchemaCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaCache.class);
+
+    static final String METRIC_HIT = "schema_cache_hit";
+    static final String METRIC_MISS = "schema_cache_miss";
+    static final String METRIC_LOAD_LATENCY = "schema_cache_load_latency_ms";
+    static final String METRIC_EVICTION = "schema_cache_eviction";
+    static final String METRIC_REVALIDATION_FAILED = "schema_cache_revalidation_failed";
+
+    private final Map<PropertyIdentifier, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final Function<PropertyIdentifier, CompletableFuture<V>> loader;
+    private final ObjDoubleConsumer<String> metrics;
+    // Incremented on every change of the loaded schemas, tells whether a new snapshot is needed
+    private final AtomicLong version = new AtomicLong();
+
+    public SchemaCache(int maximumSize, Duration ttl,
+                       Function<PropertyIdentifier, CompletableFuture<V>> loader,
+                       ObjDoubleConsumer<String> metrics) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize has to be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl.toNanos();
+        this.loader = loader;
+        this.metrics = metrics;
+    }
+
+    public CompletableFuture<V> get(PropertyIdentifier identifier) {
+        long now = System.nanoTime();
+        Entry existing = entries.get(identifier);
+
+        if (existing != null && !existing.isExpired(now)) {
+            metrics.accept(METRIC_HIT, 1);
+            if (existing.restored && existing.revalidating.compareAndSet(false, true)) {
+                revalidate(identifier, existing);
+            }
+            return existing.future;
+        }
+
+        Entry created = new Entry(new CompletableFuture<>(), now);
+        Entry winner = entries.compute(identifier, (key, current) ->
+                current == null || current.isExpired(now) ? created : current);
+
+        // Another thread started loading this identifier in the meantime
+        if (winner != created) {
+            metrics.accept(METRIC_HIT, 1);
+            return winner.future;
+        }
+
+        metrics.accept(METRIC_MISS, 1);
+        evictIfNecessary();
+        load(identifier, created);
+
+        return created.future;
+    }
+
+    public void put(PropertyIdentifier identifier, V schema) {
+        entries.put(identifier, new Entry(CompletableFuture.completedFuture(schema), System.nanoTime()));
+        version.incrementAndGet();
+        evictIfNecessary();
+    }
+
+    // Adds a schema of a previous run, it is only trusted until the first use has loaded it again. Loaded entries
+    // are not replaced.
+    public void restore(PropertyIdentifier identifier, V schema) {
+        Entry restored = new Entry(CompletableFuture.completedFuture(schema), System.nanoTime(), true);
+        if (entries.putIfAbsent(identifier, restored) == null) {
+            evictIfNecessary();
+        }
+    }
+
+    public void invalidate(PropertyIdentifier identifier) {
+        if (entries.remove(identifier) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    // The successfully loaded and restored schemas, for a snapshot
+    public Map<PropertyIdentifier, V> snapshot() {
+        Map<PropertyIdentifier, V> snapshot = new HashMap<>();
+
+        entries.forEach((identifier, entry) -> {
+            if (entry.future.isDone() && !entry.future.isCompletedExceptionally()) {
+                snapshot.put(identifier, entry.future.join());
+            }
+        });
+        return snapshot;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void load(PropertyIdentifier identifier, Entry entry) {
+        long start = System.nanoTime();
+        CompletableFuture<V> loading;
+
+        try {
+            loading = loader.apply(identifier);
+        } catch (Exception e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+
+        loading.whenComplete((schema, error) -> {
+            metrics.accept(METRIC_LOAD_LATENCY, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            if (error != null) {
+                // Failed loads are not cached, the next record for this identifier retries
+                entries.remove(identifier, entry);
+                entry.future.completeExceptionally(error);
+            } else {
+                entry.future.complete(schema);
+                version.incrementAndGet();
+            }
+        });
+    }
+
+    private void revalidate(PropertyIdentifier identifier, Entry restored) {
+        long start = System.nanoTime();
+        CompletableFuture<V> loading;
+
+        try {
+            loading = loader.apply(identifier);
+        } catch (Exception e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+
+        loading.whenComplete((schema, error) -> {
+            metrics.accept(METRIC_LOAD_LATENCY, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            if (error != null) {
+                // The next record resolves the schema again and fails like it would have without the snapshot
+                logger.debug("Restored schema of {} could not be revalidated", identifier, error);
+                metrics.accept(METRIC_REVALIDATION_FAILED, 1);
+                entries.remove(identifier, restored);
+            } else {
+                entries.replace(identifier, restored, new Entry(CompletableFuture.completedFuture(schema), restored.createdAt));
+            }
+            version.incrementAndGet();
+        });
+    }
+
+    private void evictIfNecessary() {
+        if (entries.size() <= maximumSize || !evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            long now = System.nanoTime();
+            int evicted = 0;
+
+            for (Map.Entry<PropertyIdentifier, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().isExpired(now) && entries.remove(entry.getKey(), entry.getValue())) {
+                    evicted++;
+                }
+            }
+
+            // Evict down to 90% of the limit so that the next inserts do not trigger another scan right away
+            int target = maximumSize - maximumSize / 10;
+            int overflow = entries.size() - target;
+
+            if (overflow > 0) {
+                var oldest = entries.entrySet().stream()
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().createdAt))
+                        .limit(overflow)
+                        .toList();
+
+                for (Map.Entry<PropertyIdentifier, Entry> entry : oldest) {
+                    if (entries.remove(entry.getKey(), entry.getValue())) {
+                        evicted++;
+                    }
+                }
+            }
+
+            if (evicted > 0) {
+                logger.debug("Evicted {} schema cache entries", evicted);
+                metrics.accept(METRIC_EVICTION, evicted);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private class Entry {
+        private final CompletableFuture<V> future;
+        private final long createdAt;
+        private final boolean restored;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        private Entry(CompletableFuture<V> future, long createdAt) {
+            this(future, createdAt, false);
+        }
+
+        private Entry(CompletableFuture<V> future, long createdAt, boolean restored) {
+            this.future = future;
+            this.createdAt = createdAt;
+            this.restored = restored;
+        }
+
+        private boolean isExpired(long now) {
+            return now - createdAt > ttlNanos;
+        }
+    }
+}
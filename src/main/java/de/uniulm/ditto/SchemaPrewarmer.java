@@ -0,0 +1,107 @@
+package de.uniulm.ditto;
+
+import de.uniulm.util.ThingDescriptionCache;
+import de.uniulm.util.ThingDiscovery;
+import org.eclipse.ditto.client.DittoClient;
+import org.eclipse.ditto.things.model.Feature;
+import org.eclipse.ditto.things.model.Features;
+import org.eclipse.ditto.things.model.Thing;
+import org.eclipse.ditto.things.model.ThingId;
+import org.eclipse.ditto.wot.model.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Resolves the schemas of the properties of all things matching a search before the first record arrives, so that the
+// first update of each property does not wait for Ditto and the Thing Description. Only the feature definitions are
+// fetched from Ditto, the schemas are taken from the Thing Descriptions, which are fetched once per URL.
+class SchemaPrewarmer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaPrewarmer.class);
+    private static final int PAGE_SIZE = 200;
+
+    private final SchemaCache<ValueConverter> schemaCache;
+    private final int maximumProperties;
+    private final AtomicInteger things = new AtomicInteger();
+    private final AtomicInteger properties = new AtomicInteger();
+    private volatile ThingDiscovery discovery;
+
+    SchemaPrewarmer(SchemaCache<ValueConverter> schemaCache, int maximumProperties) {
+        this.schemaCache = schemaCache;
+        this.maximumProperties = maximumProperties;
+    }
+
+    // Completes once all things matching the search are prewarmed, the cache is full or the prewarming was cancelled
+    CompletableFuture<ThingDiscovery.Result> start(DittoClient client, String namespaces, String filter, int concurrency) {
+        discovery = new ThingDiscovery(this::prewarm, concurrency);
+
+        client.twin().search().publisher(query -> {
+            if (!filter.isEmpty()) {
+                query.filter(filter);
+            }
+            if (!namespaces.isEmpty()) {
+                query.namespaces(Arrays.stream(namespaces.split(",")).map(String::trim).toList());
+            }
+            query.options("size(" + PAGE_SIZE + ")").fields("thingId,features/*/definition");
+        }).subscribe(discovery);
+
+        return discovery.done();
+    }
+
+    void cancel() {
+        if (discovery != null) {
+            discovery.cancel();
+        }
+    }
+
+    int things() {
+        return things.get();
+    }
+
+    int properties() {
+        return properties.get();
+    }
+
+    CompletableFuture<Void> prewarm(Thing thing) {
+        ThingId thingId = thing.getEntityId().orElseThrow();
+        List<CompletableFuture<Void>> features = new ArrayList<>();
+
+        for (Feature feature : thing.getFeatures().map(Features::stream).orElseGet(Stream::empty).toList()) {
+            var url = feature.getDefinition().flatMap(definition -> definition.getFirstIdentifier().getUrl());
+
+            if (url.isPresent()) {
+                features.add(ThingDescriptionCache.getInstance().get(url.get().toString())
+                        .thenAccept(description -> description.getProperties()
+                                .ifPresent(wotProperties -> put(thingId, feature.getId(), wotProperties))));
+            }
+        }
+
+        return CompletableFuture.allOf(features.toArray(CompletableFuture[]::new))
+                .whenComplete((result, error) -> things.incrementAndGet());
+    }
+
+    private void put(ThingId thingId, String featureId, Properties wotProperties) {
+        for (String name : wotProperties.keySet()) {
+            // Prewarming beyond the size of the cache would only evict the schemas put before
+            if (properties.get() >= maximumProperties) {
+                cancel();
+                return;
+            }
+
+            try {
+                schemaCache.put(new PropertyIdentifier(thingId, featureId, name),
+                        ValueConverters.forProperty(wotProperties.getProperty(name).orElseThrow()));
+                properties.incrementAndGet();
+            } catch (RuntimeException e) {
+                // Resolved again on its first update, which reports the error with the record
+                logger.debug("Skipping schema of property {} of feature {} of thing {}", name, featureId, thingId, e);
+            }
+        }
+    }
+}
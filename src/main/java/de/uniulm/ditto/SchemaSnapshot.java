@@ -0,0 +1,159 @@
+package de.uniulm.ditto;
+
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.json.JsonArray;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.things.model.ThingId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Snapshot of the resolved property schemas, so that a restarted sink does not resolve every property again before
+// its first update. Only the type and the constraints of each converter are kept, gzip compressed:
+// {"version": 1, "entries": [[thingId, featureId, propertyName, schema], ...]}
+final class SchemaSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaSnapshot.class);
+    private static final int VERSION = 1;
+
+    interface Store {
+        Optional<byte[]> load() throws IOException;
+
+        void save(byte[] snapshot) throws IOException;
+    }
+
+    private SchemaSnapshot() {
+    }
+
+    // The store of the configured mode, null if snapshots are disabled. Each sink instance has its own snapshot.
+    static Store store(DittoSinkConfig config, SinkContext sinkContext) {
+        String name = "schema-snapshot-" + sinkContext.getInstanceId();
+
+        return switch (config.schemaSnapshot) {
+            case NONE -> null;
+            case STATE -> stateStore(sinkContext, name);
+            case FILE -> fileStore(directory(config).resolve(name));
+        };
+    }
+
+    // An empty path would resolve against the working directory of the functions worker
+    private static Path directory(DittoSinkConfig config) {
+        if (config.schemaSnapshotDirectory == null || config.schemaSnapshotDirectory.isBlank()) {
+            throw new IllegalArgumentException("schemaSnapshotDirectory is required if schemaSnapshot is FILE");
+        }
+        return Path.of(config.schemaSnapshotDirectory);
+    }
+
+    // Pulsar function state, requires the state storage of the functions worker
+    static Store stateStore(SinkContext sinkContext, String key) {
+        return new Store() {
+            @Override
+            public Optional<byte[]> load() {
+                ByteBuffer state = sinkContext.getState(key);
+
+                if (state == null || !state.hasRemaining()) {
+                    return Optional.empty();
+                }
+
+                byte[] snapshot = new byte[state.remaining()];
+                state.get(snapshot);
+                return Optional.of(snapshot);
+            }
+
+            @Override
+            public void save(byte[] snapshot) {
+                sinkContext.putState(key, ByteBuffer.wrap(snapshot));
+            }
+        };
+    }
+
+    static Store fileStore(Path file) {
+        return new Store() {
+            @Override
+            public Optional<byte[]> load() throws IOException {
+                return Files.exists(file) ? Optional.of(Files.readAllBytes(file)) : Optional.empty();
+            }
+
+            @Override
+            public void save(byte[] snapshot) throws IOException {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+
+                // Written next to the snapshot and moved, a crash while writing leaves the previous snapshot intact
+                Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temporary, snapshot);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        };
+    }
+
+    static byte[] encode(Map<PropertyIdentifier, ValueConverter> schemas) {
+        var entries = JsonFactory.newArrayBuilder();
+
+        schemas.forEach((identifier, converter) -> entries.add(JsonFactory.newArrayBuilder()
+                .add(identifier.getThingId().toString())
+                .add(identifier.getFeatureId())
+                .add(identifier.getPropertyName())
+                .add(converter.toSchema())
+                .build()));
+
+        String json = JsonObject.newBuilder()
+                .set("version", VERSION)
+                .set("entries", entries.build())
+                .build()
+                .toString();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // Only writes to memory
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    // Entries that cannot be restored are skipped, a snapshot of another version is ignored
+    static Map<PropertyIdentifier, ValueConverter> decode(byte[] snapshot) throws IOException {
+        JsonObject json;
+
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(snapshot))) {
+            json = JsonFactory.readFrom(new String(gzip.readAllBytes(), StandardCharsets.UTF_8)).asObject();
+        }
+
+        Map<PropertyIdentifier, ValueConverter> schemas = new HashMap<>();
+
+        if (json.getValue("version").filter(JsonValue::isNumber).map(JsonValue::asInt).orElse(0) != VERSION) {
+            logger.warn("Ignoring schema snapshot of unknown version");
+            return schemas;
+        }
+
+        for (JsonValue value : json.getValue("entries").filter(JsonValue::isArray).map(JsonValue::asArray).orElse(JsonArray.empty())) {
+            try {
+                JsonArray entry = value.asArray();
+                PropertyIdentifier identifier = new PropertyIdentifier(ThingId.of(entry.get(0).orElseThrow().asString()),
+                        entry.get(1).orElseThrow().asString(), entry.get(2).orElseThrow().asString());
+
+                schemas.put(identifier, ValueConverters.fromSchema(entry.get(3).orElseThrow().asObject()));
+            } catch (RuntimeException e) {
+                logger.debug("Skipping invalid schema snapshot entry {}", value, e);
+            }
+        }
+        return schemas;
+    }
+}
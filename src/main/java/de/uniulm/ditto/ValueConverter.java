@@ -0,0 +1,22 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+
+import java.util.Optional;
+
+// Converts the payload of a record to the JSON value of a property. Invalid input results in an empty Optional
+// instead of an exception.
+public interface ValueConverter {
+
+    DataSchemaType getType();
+
+    Optional<JsonValue> convert(String value);
+
+    // Checks an already typed value against the schema, strings are still parsed for compatibility
+    Optional<JsonValue> convert(JsonValue value);
+
+    // The type and the constraints the converter checks, ValueConverters.fromSchema restores the converter from it
+    JsonObject toSchema();
+}
@@ -0,0 +1,335 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonObjectBuilder;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+import org.eclipse.ditto.wot.model.Property;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Builds the value converter of a WoT property once, so that records only run the conversion that matches the
+// property type and its constraints (minimum/maximum, enum, scale).
+public final class ValueConverters {
+
+    private static final Logger logger = LoggerFactory.getLogger(ValueConverters.class);
+
+    private static final Map<DataSchemaType, ValueConverter> unconstrained = new EnumMap<>(DataSchemaType.class);
+
+    static {
+        unconstrained.put(DataSchemaType.BOOLEAN, new TypeConverter(DataSchemaType.BOOLEAN));
+        unconstrained.put(DataSchemaType.INTEGER, new TypeConverter(DataSchemaType.INTEGER));
+        unconstrained.put(DataSchemaType.NUMBER, new TypeConverter(DataSchemaType.NUMBER));
+        unconstrained.put(DataSchemaType.STRING, new TypeConverter(DataSchemaType.STRING));
+        unconstrained.put(DataSchemaType.OBJECT, new TypeConverter(DataSchemaType.OBJECT));
+        unconstrained.put(DataSchemaType.ARRAY, new TypeConverter(DataSchemaType.ARRAY));
+        unconstrained.put(DataSchemaType.NULL, new TypeConverter(DataSchemaType.NULL));
+    }
+
+    private ValueConverters() {
+    }
+
+    public static ValueConverter forType(DataSchemaType type) {
+        return unconstrained.get(type);
+    }
+
+    public static ValueConverter forProperty(Property property) {
+        DataSchemaType type = property.getType().orElseThrow();
+
+        if (type == DataSchemaType.NULL) {
+            logger.warn("Property {} has DataSchemaType NULL, its updates will set the value ''", property.getPropertyName());
+        }
+
+        return forSchema(type, property.toJson());
+    }
+
+    // Restores a converter from ValueConverter.toSchema
+    public static ValueConverter fromSchema(JsonObject schema) {
+        DataSchemaType type = DataSchemaType.valueOf(schema.getValue("type").orElseThrow().asString().toUpperCase(Locale.ROOT));
+        return forSchema(type, schema);
+    }
+
+    private static ValueConverter forSchema(DataSchemaType type, JsonObject json) {
+        Double minimum = number(json, "minimum");
+        Double maximum = number(json, "maximum");
+        Double exclusiveMinimum = number(json, "exclusiveMinimum");
+        Double exclusiveMaximum = number(json, "exclusiveMaximum");
+        // WoT has no standard scaling term, a "scale" factor is applied if the description provides one
+        Double scale = number(json, "scale");
+        Set<JsonValue> allowedValues = json.getValue("enum")
+                .filter(JsonValue::isArray)
+                .map(values -> {
+                    Set<JsonValue> set = new HashSet<>();
+                    values.asArray().forEach(set::add);
+                    return set;
+                })
+                .orElse(null);
+
+        if (minimum == null && maximum == null && exclusiveMinimum == null && exclusiveMaximum == null
+                && scale == null && allowedValues == null) {
+            return forType(type);
+        }
+
+        return new ConstrainedConverter(forType(type), minimum, maximum, exclusiveMinimum, exclusiveMaximum, scale, allowedValues);
+    }
+
+    private static JsonObject typeSchema(DataSchemaType type) {
+        return JsonObject.newBuilder().set("type", type.name().toLowerCase(Locale.ROOT)).build();
+    }
+
+    private static Double number(JsonObject json, String key) {
+        return json.getValue(key).filter(JsonValue::isNumber).map(JsonValue::asDouble).orElse(null);
+    }
+
+    static Optional<JsonValue> parseBoolean(String value) {
+        if ("true".equalsIgnoreCase(value)) {
+            return Optional.of(JsonValue.of(true));
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return Optional.of(JsonValue.of(false));
+        }
+        return Optional.empty();
+    }
+
+    static Optional<JsonValue> parseInteger(String value) {
+        if (value == null || value.isEmpty()) {
+            return Optional.empty();
+        }
+
+        boolean negative = value.charAt(0) == '-';
+        int start = negative || value.charAt(0) == '+' ? 1 : 0;
+
+        if (start == value.length()) {
+            return Optional.empty();
+        }
+
+        long result = 0;
+
+        for (int i = start; i < value.length(); i++) {
+            int digit = value.charAt(i) - '0';
+
+            if (digit < 0 || digit > 9 || result > (Long.MAX_VALUE - digit) / 10) {
+                return Optional.empty();
+            }
+
+            result = result * 10 + digit;
+        }
+
+        result = negative ? -result : result;
+        return Optional.of((int) result == result ? JsonValue.of((int) result) : JsonValue.of(result));
+    }
+
+    static Optional<JsonValue> parseNumber(String value) {
+        if (!isJsonNumber(value)) {
+            return Optional.empty();
+        }
+
+        // Cannot throw anymore, the format has been checked
+        return Optional.of(JsonValue.of(Double.parseDouble(value)));
+    }
+
+    static Optional<JsonValue> parseJson(String value, boolean object) {
+        if (value == null || value.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // Avoids the exception of the parser for the common case of a scalar payload
+        char first = value.charAt(0);
+        if (first != (object ? '{' : '[')) {
+            return Optional.empty();
+        }
+
+        try {
+            JsonValue json = JsonFactory.readFrom(value);
+            return object == json.isObject() ? Optional.of(json) : Optional.empty();
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    // Checks the JSON number grammar: -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?, leading '+' is tolerated
+    private static boolean isJsonNumber(String value) {
+        if (value == null) {
+            return false;
+        }
+
+        int length = value.length();
+        int i = 0;
+
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            i++;
+        }
+
+        int digits = 0;
+        while (i < length && Character.isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            int fraction = 0;
+            while (i < length && Character.isDigit(value.charAt(i))) {
+                i++;
+                fraction++;
+            }
+            if (fraction == 0) {
+                return false;
+            }
+        }
+
+        if (i < length && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                i++;
+            }
+            int exponent = 0;
+            while (i < length && Character.isDigit(value.charAt(i))) {
+                i++;
+                exponent++;
+            }
+            if (exponent == 0) {
+                return false;
+            }
+        }
+
+        return i == length;
+    }
+
+    private record TypeConverter(DataSchemaType type) implements ValueConverter {
+
+        @Override
+        public DataSchemaType getType() {
+            return type;
+        }
+
+        @Override
+        public Optional<JsonValue> convert(String value) {
+            return switch (type) {
+                case BOOLEAN -> parseBoolean(value);
+                case INTEGER -> parseInteger(value);
+                case NUMBER -> parseNumber(value);
+                case STRING -> value == null ? Optional.empty() : Optional.of(JsonValue.of(value));
+                case OBJECT -> parseJson(value, true);
+                case ARRAY -> parseJson(value, false);
+                case NULL -> Optional.of(JsonValue.of(""));
+            };
+        }
+
+        @Override
+        public Optional<JsonValue> convert(JsonValue value) {
+            if (value == null) {
+                return Optional.empty();
+            }
+
+            boolean matches = switch (type) {
+                case BOOLEAN -> value.isBoolean();
+                case INTEGER -> value.isInt() || value.isLong();
+                case NUMBER -> value.isNumber();
+                case STRING -> value.isString();
+                case OBJECT -> value.isObject();
+                case ARRAY -> value.isArray();
+                case NULL -> false;
+            };
+
+            if (matches) {
+                return Optional.of(value);
+            }
+
+            if (type == DataSchemaType.NULL) {
+                return Optional.of(JsonValue.of(""));
+            }
+
+            return value.isString() ? convert(value.asString()) : Optional.empty();
+        }
+
+        @Override
+        public JsonObject toSchema() {
+            return typeSchema(type);
+        }
+    }
+
+    private record ConstrainedConverter(ValueConverter base, Double minimum, Double maximum, Double exclusiveMinimum,
+                                        Double exclusiveMaximum, Double scale,
+                                        Set<JsonValue> allowedValues) implements ValueConverter {
+
+        @Override
+        public DataSchemaType getType() {
+            return base.getType();
+        }
+
+        @Override
+        public Optional<JsonValue> convert(String value) {
+            return base.convert(value).map(this::scale).filter(this::isAllowed);
+        }
+
+        @Override
+        public Optional<JsonValue> convert(JsonValue value) {
+            return base.convert(value).map(this::scale).filter(this::isAllowed);
+        }
+
+        @Override
+        public JsonObject toSchema() {
+            JsonObjectBuilder schema = typeSchema(getType()).toBuilder();
+
+            setIfPresent(schema, "minimum", minimum);
+            setIfPresent(schema, "maximum", maximum);
+            setIfPresent(schema, "exclusiveMinimum", exclusiveMinimum);
+            setIfPresent(schema, "exclusiveMaximum", exclusiveMaximum);
+            setIfPresent(schema, "scale", scale);
+            if (allowedValues != null) {
+                schema.set("enum", JsonFactory.newArrayBuilder(allowedValues).build());
+            }
+
+            return schema.build();
+        }
+
+        private static void setIfPresent(JsonObjectBuilder schema, String key, Double value) {
+            if (value != null) {
+                schema.set(key, value);
+            }
+        }
+
+        private JsonValue scale(JsonValue value) {
+            if (scale == null || !value.isNumber()) {
+                return value;
+            }
+
+            double scaled = value.asDouble() * scale;
+
+            if (getType() == DataSchemaType.INTEGER && scaled == Math.rint(scaled) && Math.abs(scaled) <= Long.MAX_VALUE) {
+                return JsonValue.of((long) scaled);
+            }
+            return JsonValue.of(scaled);
+        }
+
+        private boolean isAllowed(JsonValue value) {
+            if (allowedValues != null && !allowedValues.contains(value)) {
+                return false;
+            }
+
+            if (!value.isNumber()) {
+                return true;
+            }
+
+            double number = value.asDouble();
+
+            return (minimum == null || number >= minimum)
+                    && (maximum == null || number <= maximum)
+                    && (exclusiveMinimum == null || number > exclusiveMinimum)
+                    && (exclusiveMaximum == null || number < exclusiveMaximum);
+        }
+    }
+}
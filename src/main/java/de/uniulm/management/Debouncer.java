@@ -0,0 +1,137 @@
+package de.uniulm.management;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Runs the action of a key once no further submit for the key arrived within the delay, so a burst of changes to one
+// thing results in a single run. A key that keeps changing runs at the latest maxWait after its first pending submit.
+// Runs of the same key never overlap, a submit during a run schedules one more run after it, also for submits that
+// skip the delay.
+class Debouncer<K> {
+
+    private final ScheduledExecutorService scheduler;
+    private final long delayNanos;
+    private final long maxWaitNanos;
+    private final Function<K, CompletableFuture<?>> action;
+    private final Map<K, Entry> entries = new HashMap<>();
+
+    Debouncer(ScheduledExecutorService scheduler, Duration delay, Duration maxWait, Function<K, CompletableFuture<?>> action) {
+        this.scheduler = scheduler;
+        this.delayNanos = delay.toNanos();
+        this.maxWaitNanos = Math.max(delay.toNanos(), maxWait.toNanos());
+        this.action = action;
+    }
+
+    // The returned future completes once a run that started after the submit finished
+    synchronized CompletableFuture<Void> submit(K key) {
+        return enqueue(key, false);
+    }
+
+    // Runs the action right away, or right after the run in progress, e.g. for a periodic sweep
+    synchronized CompletableFuture<Void> submitNow(K key) {
+        return enqueue(key, true);
+    }
+
+    // Keys with a scheduled or running action
+    synchronized int pending() {
+        return entries.size();
+    }
+
+    private CompletableFuture<Void> enqueue(K key, boolean immediate) {
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry());
+
+        if (entry.pending == null) {
+            entry.pending = new CompletableFuture<>();
+            entry.firstSubmit = System.nanoTime();
+        }
+        entry.immediate |= immediate;
+        // Scheduling fails the pending future and clears it if the scheduler is shut down
+        CompletableFuture<Void> pending = entry.pending;
+
+        if (!entry.running) {
+            schedule(key, entry);
+        }
+        return pending;
+    }
+
+    private void schedule(K key, Entry entry) {
+        if (entry.scheduled != null) {
+            entry.scheduled.cancel(false);
+        }
+
+        long delay = entry.immediate ? 0 : Math.min(delayNanos, entry.firstSubmit + maxWaitNanos - System.nanoTime());
+
+        // A run that already started when it was cancelled sees the newer generation and does nothing
+        long generation = ++entry.generation;
+        try {
+            entry.scheduled = scheduler.schedule(() -> run(key, generation), Math.max(0, delay), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down, no run will complete the pending submits
+            entries.remove(key);
+            entry.pending.completeExceptionally(e);
+            entry.pending = null;
+        }
+    }
+
+    private void run(K key, long generation) {
+        CompletableFuture<Void> covered;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+
+            if (entry == null || entry.generation != generation || entry.running) {
+                return;
+            }
+            entry.scheduled = null;
+            entry.running = true;
+            entry.immediate = false;
+            covered = entry.pending;
+            entry.pending = null;
+        }
+
+        CompletableFuture<?> future;
+        try {
+            future = action.apply(key);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                covered.completeExceptionally(error);
+            } else {
+                covered.complete(null);
+            }
+
+            finished(key);
+        });
+    }
+
+    private synchronized void finished(K key) {
+        Entry entry = entries.get(key);
+        entry.running = false;
+
+        if (entry.pending != null) {
+            schedule(key, entry);
+        } else {
+            entries.remove(key);
+        }
+    }
+
+    private static class Entry {
+        private ScheduledFuture<?> scheduled;
+        private boolean running;
+        private boolean immediate;
+        // Submits that arrived since the last run started, completed once the next run finished
+        private CompletableFuture<Void> pending;
+        private long firstSubmit;
+        private long generation;
+    }
+}
@@ -1,19 +1,24 @@
 package de.uniulm.management;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.uniulm.AbstractFunction;
 import de.uniulm.util.DittoClientUtil;
-import org.apache.commons.io.IOUtils;
-import org.apache.pulsar.client.admin.PulsarAdmin;
-import org.apache.pulsar.client.admin.PulsarAdminException;
+import de.uniulm.util.PipelineMetrics;
+import de.uniulm.util.ThingDescriptionCache;
+import de.uniulm.util.ThingDiscovery;
 import org.apache.pulsar.common.io.SourceConfig;
 import org.apache.pulsar.functions.api.Context;
 import org.apache.pulsar.functions.api.Function;
+import org.eclipse.ditto.base.model.common.HttpStatus;
+import org.eclipse.ditto.base.model.exceptions.DittoRuntimeException;
 import org.eclipse.ditto.client.DittoClient;
 import org.eclipse.ditto.client.changes.ChangeAction;
 import org.eclipse.ditto.client.changes.ThingChange;
+import org.eclipse.ditto.json.JsonField;
+import org.eclipse.ditto.json.JsonFieldSelector;
 import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonPointer;
+import org.eclipse.ditto.json.JsonValue;
 import org.eclipse.ditto.things.model.*;
 import org.eclipse.ditto.wot.model.Events;
 import org.eclipse.ditto.wot.model.ThingDescription;
@@ -21,23 +26,63 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class DittoEventManagement extends AbstractFunction implements Function<String, Void> {
 
     private static final Logger logger = LoggerFactory.getLogger(DittoEventManagement.class);
     private static final ObjectMapper mapper = new ObjectMapper();
+
+    static final String METRIC_THING_CHANGES = "management_thing_changes";
+    static final String METRIC_TOPOLOGY_BUILD = "management_topology_build_ms";
+    static final String METRIC_TOPOLOGY_FAILURES = "management_topology_failures";
+    static final String METRIC_SOURCES_CREATED = "management_sources_created";
+    static final String METRIC_SOURCES_EXISTING = "management_sources_existing";
+    static final String METRIC_SOURCES_KNOWN = "management_sources_known";
+    static final String METRIC_SOURCES_UPDATED = "management_sources_updated";
+    static final String METRIC_SOURCES_DELETED = "management_sources_deleted";
+    static final String METRIC_RECONCILIATIONS = "management_reconciliations";
+    static final String METRIC_RECONCILIATIONS_PENDING = "management_reconciliations_pending";
+    static final String METRIC_THINGS_MANAGED = "management_things_managed";
+
+    private static final String TENANT = "public";
+    private static final String NAMESPACE = "default";
+    private static final String SOURCE_ARCHIVE_URL = "file:///pulsar/connectors/MqttSource-1.0-SNAPSHOT.nar";
+    // A build needs the definition for the ThingDescription and the property names for the mapping
+    static final JsonFieldSelector TOPOLOGY_FIELDS = JsonFieldSelector.newInstance("definition", "features/*/properties");
+
     private final List<String> subscribedThingIds = new ArrayList<>();
     private DittoClient dittoClient;
     private Context context;
+    private PipelineMetrics metrics;
+    private SourceInventory sourceInventory;
+    private ThingDiscovery discovery;
+    // Things whose topology this function built, they are reconciled by the periodic sweep
+    private final Set<ThingId> managedThings = ConcurrentHashMap.newKeySet();
+    // Last known config of each source, saves fetching it from the admin API when reconciling
+    private final Map<String, SourceConfig> appliedSources = new ConcurrentHashMap<>();
+    // The property names per feature of each thing as of its last build, they make up the mapping of its source
+    private final Map<ThingId, Map<String, Set<String>>> knownProperties = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reconciliationScheduler;
+    private Debouncer<ThingId> reconciliation;
 
     public DittoEventManagement() {
         super(new ArrayList<>());
@@ -46,7 +91,7 @@ public class DittoEventManagement extends AbstractFunction implements Function<S
     @Override
     public Void process(String input, Context context) throws Exception {
         try {
-            CreateTopologyForThing(input);
+            CreateTopologyForThing(ThingId.of(input)).get();
         } catch (Exception e) {
             logger.error("Could not create topology for thing {}", input, e);
         }
@@ -61,48 +106,158 @@ public class DittoEventManagement extends AbstractFunction implements Function<S
 
         Map<String, Object> config = context.getUserConfigMap();
 
+        metrics = new PipelineMetrics(context::recordMetric,
+                Duration.ofSeconds(Long.parseLong(config.getOrDefault("metricsIntervalSeconds", 10).toString())));
+
+        ThingDescriptionCache.getInstance().configure(
+                Long.parseLong(config.getOrDefault("tdCacheMaxWeightBytes", ThingDescriptionCache.DEFAULT_MAX_WEIGHT_BYTES).toString()),
+                Duration.ofSeconds(Long.parseLong(config.getOrDefault("tdCacheRefreshSeconds", ThingDescriptionCache.DEFAULT_REFRESH_AFTER.toSeconds()).toString())));
+
+        sourceInventory = new SourceInventory(context.getPulsarAdmin(), TENANT, NAMESPACE,
+                Duration.ofSeconds(Long.parseLong(config.getOrDefault("sourceInventoryRefreshSeconds", 300).toString())));
+        metrics.gauge(METRIC_SOURCES_KNOWN, sourceInventory::size);
+
+        reconciliationScheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "topology-reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciliation = new Debouncer<>(reconciliationScheduler,
+                Duration.ofMillis(Long.parseLong(config.getOrDefault("reconcileDebounceMillis", 1000).toString())),
+                Duration.ofMillis(Long.parseLong(config.getOrDefault("reconcileMaxWaitMillis", 10000).toString())),
+                this::ReconcileTopologyForThing);
+        metrics.gauge(METRIC_RECONCILIATIONS_PENDING, reconciliation::pending);
+        metrics.gauge(METRIC_THINGS_MANAGED, managedThings::size);
+
         dittoClient = DittoClientUtil.openDittoClient(config.get("dittoUsername").toString(), config.get("dittoPassword").toString(), config.get("websocketEndpoint").toString());
 
-        // Create topology if a new thing is created
+        // Create topology if a new thing is created, reconcile it if the thing changes
         dittoClient.twin().registerForThingChanges("ditto-event-management", this::handleChange);
         dittoClient.twin().startConsumption();
 
-        if (config.get("thingIds").toString().isEmpty()) {
-            return;
-        }
+        int concurrency = Integer.parseInt(config.getOrDefault("bootstrapConcurrency", 16).toString());
 
-        String[] initialSubscriptions = config.get("thingIds").toString().split(",");
+        long sweepInterval = Long.parseLong(config.getOrDefault("reconcileIntervalSeconds", 600).toString());
+        if (sweepInterval > 0) {
+            // The sweep blocks its thread while it waits for room, the debounced reconciliations use the other one
+            Duration sweepTimeout = Duration.ofSeconds(sweepInterval);
+            reconciliationScheduler.scheduleWithFixedDelay(() -> sweep(concurrency, sweepTimeout), sweepInterval, sweepInterval, TimeUnit.SECONDS);
+        }
+        String discoveryFilter = config.getOrDefault("discoveryFilter", "").toString();
+        String discoveryNamespaces = config.getOrDefault("discoveryNamespaces", "").toString();
 
+        if (!discoveryFilter.isEmpty() || !discoveryNamespaces.isEmpty()) {
+            discover(discoveryFilter, discoveryNamespaces, concurrency,
+                    Integer.parseInt(config.getOrDefault("discoveryPageSize", 200).toString()));
+        }
 
-        for (String initialSubscription : initialSubscriptions) {
-            try {
-                CreateTopologyForThing(initialSubscription);
-            } catch (Exception e) {
-                logger.error("Could not create topology for thing {}", initialSubscription, e);
-            }
+        if (config.getOrDefault("thingIds", "").toString().isEmpty()) {
+            return;
         }
 
+        String[] initialSubscriptions = config.get("thingIds").toString().split(",");
+
+        bootstrap(initialSubscriptions, concurrency);
     }
 
     @Override
     public void close() throws Exception {
         Function.super.close();
 
+        if (discovery != null) {
+            discovery.cancel();
+        }
+
+        if (reconciliationScheduler != null) {
+            reconciliationScheduler.shutdownNow();
+        }
+
         if (dittoClient != null) {
             dittoClient.destroy();
         }
+
+        if (metrics != null) {
+            metrics.close();
+        }
+    }
+
+    // Builds the topologies of the initial things with at most `concurrency` builds in flight and waits for all of them
+    private void bootstrap(String[] thingIds, int concurrency) throws InterruptedException {
+        long start = System.nanoTime();
+        Semaphore builds = new Semaphore(concurrency);
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(thingIds.length);
+
+        // Fetched while the first things are retrieved from Ditto
+        sourceInventory.load();
+
+        for (String thingId : thingIds) {
+            builds.acquire();
+
+            CompletableFuture<Void> future;
+            try {
+                future = CreateTopologyForThing(ThingId.of(thingId.trim()));
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            futures.add(future.handle((result, error) -> {
+                builds.release();
+
+                if (error != null) {
+                    failures.incrementAndGet();
+                    logger.error("Could not create topology for thing {}", thingId, error);
+                }
+                return null;
+            }));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        logger.info("Created the topologies of {} things in {} ms, {} failed", thingIds.length - failures.get(),
+                Duration.ofNanos(System.nanoTime() - start).toMillis(), failures.get());
+    }
+
+    // Streams the things matching the search page by page and builds their topologies in the background. Unlike the
+    // thingIds, the function does not wait for the discovery to finish.
+    private void discover(String filter, String namespaces, int concurrency, int pageSize) {
+        long start = System.nanoTime();
+        discovery = new ThingDiscovery(thing -> CreateTopologyForThing(thing.getEntityId().orElseThrow()), concurrency);
+
+        // Fetched while the first things are retrieved from Ditto
+        sourceInventory.load();
+
+        dittoClient.twin().search().publisher(query -> {
+            if (!filter.isEmpty()) {
+                query.filter(filter);
+            }
+            if (!namespaces.isEmpty()) {
+                query.namespaces(Arrays.stream(namespaces.split(",")).map(String::trim).toList());
+            }
+            query.options("size(" + pageSize + ")").fields("thingId");
+        }).subscribe(discovery);
+
+        discovery.done().thenAccept(result -> logger.info("Discovered {} things in {} ms, {} topologies failed",
+                result.discovered(), Duration.ofNanos(System.nanoTime() - start).toMillis(), result.failed()));
     }
 
     private void handleChange(ThingChange change) {
-        logger.info("Received thing change");
+        logger.debug("Received thing change");
+        metrics.increment(METRIC_THING_CHANGES);
         try {
-            if (change.getAction() == ChangeAction.CREATED) {
-                Thing thing = change.getThing().orElseThrow();
-                ThingId id = thing.getEntityId().orElseThrow();
-
-                CreateTopologyForThing(id);
+            ThingId id = ThingId.of(change.getEntityId());
 
+            if (change.getAction() == ChangeAction.CREATED && change.getPath().isEmpty()) {
                 logger.info("Creating topology for thing {}", id);
+
+                // Not waited for, the callback must not block the Ditto client
+                CreateTopologyForThing(id).whenComplete((result, error) -> {
+                    if (error != null) {
+                        logger.error("Could not create topology for thing {}", id, error);
+                    }
+                });
+            } else if (AffectsTopology(change.getAction(), change.getPath()) && AltersMapping(id, change)) {
+                reconciliation.submit(id);
             }
         } catch (Exception e) {
             logger.error("Error while processing change", e);
@@ -110,70 +265,281 @@ public class DittoEventManagement extends AbstractFunction implements Function<S
 
     }
 
-    private void CreateTopologyForThing(String stringThingId) throws ExecutionException, InterruptedException {
-        CreateTopologyForThing(ThingId.of(stringThingId));
+    // Whether the change can alter the source of the thing: its definition (the ThingDescription with the MQTT
+    // connections) or the set of feature properties (the mapping). Changed property values, attributes and feature
+    // definitions are ignored, they make up most of the changes.
+    static boolean AffectsTopology(ChangeAction action, JsonPointer path) {
+        if (path.isEmpty()) {
+            return true;
+        }
+
+        String root = path.get(0).map(Object::toString).orElse("");
+
+        if (root.equals("definition")) {
+            return true;
+        }
+        if (!root.equals("features")) {
+            return false;
+        }
+
+        int levels = path.getLevelCount();
+        if (levels <= 2) {
+            return true;
+        }
+        if (!path.get(2).map(Object::toString).orElse("").equals("properties")) {
+            return false;
+        }
+        return levels == 3 || levels == 4 && (action == ChangeAction.CREATED || action == ChangeAction.DELETED);
     }
 
-    private void CreateTopologyForThing(ThingId thingId) throws ExecutionException, InterruptedException {
-        ThingDescription description = GetThingDescription(thingId).get();
+    // Merges and puts of all properties of a feature, e.g. the batches of the sink, only alter the mapping if they add
+    // or remove properties
+    private boolean AltersMapping(ThingId thingId, ThingChange change) {
+        JsonPointer path = change.getPath();
 
-        List<MqttConnection> connections = GetMqttConnectionsOfThing(description);
+        if (path.getLevelCount() != 3 || change.getAction() != ChangeAction.MERGED && change.getAction() != ChangeAction.UPDATED) {
+            return true;
+        }
 
+        String featureId = path.get(1).map(Object::toString).orElse("");
+        Set<String> known = knownProperties.getOrDefault(thingId, Map.of()).get(featureId);
+        return ChangesPropertyKeys(change.getAction(), change.getValue(), known);
+    }
 
-        List<String> distinctMqttUrls = connections.stream().map(MqttConnection::href).distinct().toList();
+    // Without known properties, e.g. before the first build, the change is assumed to alter them. A merge adds the
+    // properties it sets and removes those it sets to null, a put replaces all properties.
+    static boolean ChangesPropertyKeys(ChangeAction action, Optional<JsonValue> value, Set<String> known) {
+        if (known == null || value.isEmpty() || !value.get().isObject()) {
+            return true;
+        }
 
-        for (String connection : distinctMqttUrls) {
-            try {
-                CreateMqttSourceForThingIfNotExists(connection, thingId);
-            } catch (Exception e) {
-                logger.error("Could not create topology for thing {}", thingId.toString(), e);
+        JsonObject properties = value.get().asObject();
+
+        if (action == ChangeAction.MERGED) {
+            for (JsonField field : properties) {
+                boolean removed = field.getValue().isNull();
+                if (removed == known.contains(field.getKeyName())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return !known.equals(properties.getKeys().stream().map(Object::toString).collect(Collectors.toSet()));
+    }
+
+    // Periodically reconciles all things this function manages, for changes that were missed or ignored. A sweep that
+    // does not finish within the timeout gives up waiting, its reconciliations still complete on their own.
+    private void sweep(int concurrency, Duration timeout) {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        Semaphore reconciliations = new Semaphore(concurrency);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        try {
+            for (ThingId thingId : List.copyOf(managedThings)) {
+                if (!reconciliations.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    throw new TimeoutException();
+                }
+                // Through the debouncer, so that the sweep never overlaps a reconciliation of the same thing
+                futures.add(reconciliation.submitNow(thingId).handle((result, error) -> {
+                    reconciliations.release();
+                    return null;
+                }));
             }
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            logger.info("Reconciled the topologies of {} things in {} ms", futures.size(),
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (TimeoutException e) {
+            logger.warn("Reconciliation sweep did not finish within {} s, {} things were submitted", timeout.toSeconds(), futures.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Reconciliation sweep failed", e);
         }
     }
 
-    private CompletableFuture<ThingDescription> GetThingDescription(ThingId thingId) {
-        CompletableFuture<ThingDescription> future = new CompletableFuture<>();
+    private CompletableFuture<Void> CreateTopologyForThing(ThingId thingId) {
+        long start = System.nanoTime();
 
-        dittoClient.twin().forId(thingId).retrieve().whenComplete((thing, ex) -> {
-            if (ex != null) {
-                future.completeExceptionally(ex);
-                return;
+        return BuildTopologyForThing(thingId).whenComplete((result, error) -> {
+            if (error != null) {
+                metrics.increment(METRIC_TOPOLOGY_FAILURES);
+            } else {
+                managedThings.add(thingId);
             }
+            metrics.histogram(METRIC_TOPOLOGY_BUILD).recordNanos(System.nanoTime() - start);
+        });
+    }
 
-            try {
-                String definitionUrl = thing.getDefinition().orElseThrow().getUrl().orElseThrow().toString();
-                //TODO: ONLY FOR DEBUGGING
-                //definitionUrl = definitionUrl.replace("nginx:80", "localhost:8080");
-                String jsonString = IOUtils.toString(new URL(definitionUrl), StandardCharsets.UTF_8);
-                future.complete(ThingDescription.fromJson(JsonObject.of(jsonString)));
-            } catch (Exception e) {
-                logger.error("Error creating topology for thing {}", thingId.toString(), e);
-                future.completeExceptionally(e);
+    // Creates the source of the thing if there is none, an existing source is left as it is
+    private CompletableFuture<Void> BuildTopologyForThing(ThingId thingId) {
+        return GetDesiredSourceConfig(thingId).thenCompose(desired -> desired
+                .map(source -> CreateMqttSourceIfNotExists(source.config()).thenRun(() -> RememberProperties(thingId, source)))
+                .orElseGet(() -> CompletableFuture.completedFuture(null)));
+    }
+
+    // Brings the source of the thing in line with the thing: creates a missing source, updates a source whose
+    // connection or mapping changed and deletes the source of a thing that was deleted or has no MQTT connection anymore
+    private CompletableFuture<Void> ReconcileTopologyForThing(ThingId thingId) {
+        metrics.increment(METRIC_RECONCILIATIONS);
+
+        return GetDesiredSourceConfig(thingId)
+                .exceptionallyCompose(error -> IsNotFound(error)
+                        ? CompletableFuture.completedFuture(Optional.empty())
+                        : CompletableFuture.failedFuture(error))
+                .thenCompose(desired -> sourceInventory.load().thenCompose(loaded -> desired.isPresent()
+                        ? ApplySourceConfig(thingId, desired.get().config()).thenRun(() -> RememberProperties(thingId, desired.get()))
+                        : DeleteSource(thingId)))
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        metrics.increment(METRIC_TOPOLOGY_FAILURES);
+                        logger.error("Could not reconcile topology for thing {}", thingId, error);
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> ApplySourceConfig(ThingId thingId, SourceConfig desired) {
+        String sourceName = desired.getName();
+        managedThings.add(thingId);
+
+        if (!sourceInventory.contains(sourceName)) {
+            return CreateMqttSourceIfNotExists(desired);
+        }
+
+        SourceConfig applied = appliedSources.get(sourceName);
+        CompletableFuture<SourceConfig> existing = applied != null
+                ? CompletableFuture.completedFuture(applied)
+                : context.getPulsarAdmin().sources().getSourceAsync(TENANT, NAMESPACE, sourceName);
+
+        return existing.thenCompose(current -> {
+            if (IsSameSource(current, desired)) {
+                appliedSources.put(sourceName, current);
+                return CompletableFuture.completedFuture(null);
             }
+
+            logger.info("Updating source {} of thing {}", sourceName, thingId);
+            return context.getPulsarAdmin().sources().updateSourceWithUrlAsync(desired, SOURCE_ARCHIVE_URL).thenRun(() -> {
+                appliedSources.put(sourceName, desired);
+                metrics.increment(METRIC_SOURCES_UPDATED);
+            });
         });
+    }
 
-        return future;
+    private CompletableFuture<Void> DeleteSource(ThingId thingId) {
+        String sourceName = SourceName(thingId);
+        managedThings.remove(thingId);
+        appliedSources.remove(sourceName);
+        knownProperties.remove(thingId);
+
+        if (!sourceInventory.contains(sourceName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        logger.info("Deleting source {} of thing {}", sourceName, thingId);
+        return sourceInventory.delete(sourceName, () -> context.getPulsarAdmin().sources().deleteSourceAsync(TENANT, NAMESPACE, sourceName))
+                .thenRun(() -> metrics.increment(METRIC_SOURCES_DELETED));
     }
 
-    private void CreateMqttSourceForThingIfNotExists(String connectionUrl, ThingId thingId) throws PulsarAdminException, ExecutionException, InterruptedException, URISyntaxException, JsonProcessingException {
-        PulsarAdmin admin = context.getPulsarAdmin();
-        String mqttName = "mqtt-" + thingId.getNamespace() + "-" + thingId.getName();
+    // Only the parts of the config this function sets are compared, Pulsar fills in defaults for the others
+    static boolean IsSameSource(SourceConfig current, SourceConfig desired) {
+        return Objects.equals(current.getConfigs(), desired.getConfigs())
+                && Objects.equals(current.getTopicName(), desired.getTopicName())
+                && Objects.equals(current.getClassName(), desired.getClassName());
+    }
 
-        if (admin.sources().listSources("public", "default").contains(mqttName)) {
-            logger.info("Source {} already exists.", mqttName);
-            return;
+    // Only after the source was applied, a failed apply has to see the change to the properties again
+    private void RememberProperties(ThingId thingId, DesiredSource source) {
+        knownProperties.put(thingId, source.featureProperties());
+    }
+
+    private static boolean IsNotFound(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof DittoRuntimeException dittoException && HttpStatus.NOT_FOUND.equals(dittoException.getHttpStatus());
+    }
+
+    // The source the thing should have and the feature properties it maps, empty if its ThingDescription has no MQTT
+    // connection
+    private CompletableFuture<Optional<DesiredSource>> GetDesiredSourceConfig(ThingId thingId) {
+        // The only retrieve of the build, the description and the mapping are both derived from it
+        return RetrieveThingForTopology(thingId).thenCompose(thing -> GetThingDescription(thing).thenApply(description -> {
+            List<String> distinctMqttUrls = GetMqttConnectionsOfThing(description).stream().map(MqttConnection::href).distinct().toList();
+
+            if (distinctMqttUrls.isEmpty()) {
+                return Optional.empty();
+            }
+            if (distinctMqttUrls.size() > 1) {
+                logger.warn("Thing {} has {} MQTT connections, its source uses {}", thingId, distinctMqttUrls.size(), distinctMqttUrls.get(0));
+            }
+
+            String propertyToFeatureMapping = GetPropertyFeatureMapping(thing);
+            logger.info("Created mapping: {}", propertyToFeatureMapping);
+
+            return Optional.of(new DesiredSource(CreateMqttSourceConfig(distinctMqttUrls.get(0), thingId, propertyToFeatureMapping),
+                    GetFeatureProperties(thing)));
+        }));
+    }
+
+    private record DesiredSource(SourceConfig config, Map<String, Set<String>> featureProperties) {
+    }
+
+    private CompletableFuture<Thing> RetrieveThingForTopology(ThingId thingId) {
+        return dittoClient.twin().forId(thingId).retrieve(TOPOLOGY_FIELDS).toCompletableFuture();
+    }
+
+    private CompletableFuture<ThingDescription> GetThingDescription(Thing thing) {
+        try {
+            String definitionUrl = thing.getDefinition().orElseThrow().getUrl().orElseThrow().toString();
+            //TODO: ONLY FOR DEBUGGING
+            //definitionUrl = definitionUrl.replace("nginx:80", "localhost:8080");
+            return ThingDescriptionCache.getInstance().get(definitionUrl).whenComplete((description, error) -> {
+                if (error != null) {
+                    logger.error("Error creating topology for thing {}", thing.getEntityId().orElse(null), error);
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error creating topology for thing {}", thing.getEntityId().orElse(null), e);
+            return CompletableFuture.failedFuture(e);
         }
+    }
 
-        String propertyToFeatureMapping = GetPropertyFeatureMapping(thingId).get();
+    private CompletableFuture<Void> CreateMqttSourceIfNotExists(SourceConfig config) {
+        String sourceName = config.getName();
 
-        logger.info("Created mapping: {}", propertyToFeatureMapping);
+        return sourceInventory.reserve(sourceName).thenCompose(reserved -> {
+            if (!reserved) {
+                logger.info("Source {} already exists.", sourceName);
+                metrics.increment(METRIC_SOURCES_EXISTING);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return sourceInventory.create(sourceName, () -> context.getPulsarAdmin().sources().createSourceWithUrlAsync(config, SOURCE_ARCHIVE_URL))
+                    .thenRun(() -> {
+                        appliedSources.put(sourceName, config);
+                        metrics.increment(METRIC_SOURCES_CREATED);
+                    });
+        });
+    }
+
+    private static String MqttName(ThingId thingId) {
+        return "mqtt-" + thingId.getNamespace() + "-" + thingId.getName();
+    }
+
+    private static String SourceName(ThingId thingId) {
+        return MqttName(thingId) + "-source";
+    }
+
+    private static SourceConfig CreateMqttSourceConfig(String connectionUrl, ThingId thingId, String propertyToFeatureMapping) {
+        String mqttName = MqttName(thingId);
 
         Map<String, String> additionalProperties = new HashMap<>();
         additionalProperties.put("propertyFeatureMapping", propertyToFeatureMapping);
         additionalProperties.put("thingId", thingId.toString());
 
         Map<String, Object> customConfig = new HashMap<>();
-        URI url = new URI(connectionUrl);
+        URI url = URI.create(connectionUrl);
         customConfig.put("host", url.getHost());
         customConfig.put("port", url.getPort());
         customConfig.put("serverPath", url.getPath());
@@ -184,41 +550,45 @@ public class DittoEventManagement extends AbstractFunction implements Function<S
 
         SourceConfig config = new SourceConfig();
         config.setConfigs(customConfig);
-        config.setTenant("public");
-        config.setNamespace("default");
-        config.setName(mqttName + "-source");
+        config.setTenant(TENANT);
+        config.setNamespace(NAMESPACE);
+        config.setName(SourceName(thingId));
         config.setClassName("de.exxcellent.orchideo.connect.pulsar.MqttSource"); // TODO: extract this to the config
         config.setArchive("/pulsar/connectors/MqttSource-1.0-SNAPSHOT.nar");
-        config.setTopicName("persistent://public/default/mqtt-" + thingId.getNamespace() + "-" + thingId.getName());
-
-        admin.sources().createSourceWithUrl(config, "file:///pulsar/connectors/MqttSource-1.0-SNAPSHOT.nar");
+        config.setTopicName("persistent://public/default/" + mqttName);
+        return config;
     }
 
-    private CompletableFuture<String> GetPropertyFeatureMapping(ThingId thingId) {
-        CompletableFuture<String> future = new CompletableFuture<>();
+    private static String GetPropertyFeatureMapping(Thing thing) {
+        StringBuilder mapping = new StringBuilder();
+        Features features = thing.getFeatures().orElseThrow();
 
-        dittoClient.twin().forId(thingId).retrieve().whenComplete((thing, ex) -> {
-            if (ex != null) {
-                future.completeExceptionally(ex);
-                return;
+        for (Feature feature : features) {
+            // Features without properties are not part of the selected fields
+            if (feature.getProperties().isEmpty()) {
+                continue;
             }
 
-            StringBuilder mapping = new StringBuilder();
-            Features features = thing.getFeatures().orElseThrow();
-
-            for (Feature feature : features) {
-                FeatureProperties properties = feature.getProperties().orElseThrow();
-                List<String> stringProperties = properties.getKeys().stream().map(Object::toString).toList();
+            FeatureProperties properties = feature.getProperties().get();
+            List<String> stringProperties = properties.getKeys().stream().map(Object::toString).toList();
 
-                for (String stringProperty : stringProperties) {
-                    mapping.append(stringProperty).append("=").append(feature.getId()).append(";");
-                }
+            for (String stringProperty : stringProperties) {
+                mapping.append(stringProperty).append("=").append(feature.getId()).append(";");
             }
+        }
 
-            future.complete(mapping.toString());
-        });
+        return mapping.toString();
+    }
+
+    private static Map<String, Set<String>> GetFeatureProperties(Thing thing) {
+        Map<String, Set<String>> properties = new HashMap<>();
+
+        for (Feature feature : thing.getFeatures().orElseThrow()) {
+            feature.getProperties().ifPresent(featureProperties -> properties.put(feature.getId(),
+                    featureProperties.getKeys().stream().map(Object::toString).collect(Collectors.toSet())));
+        }
 
-        return future;
+        return properties;
     }
 
     private List<MqttConnection> GetMqttConnectionsOfThing(ThingDescription description) {
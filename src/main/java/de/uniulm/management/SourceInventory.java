@@ -0,0 +1,131 @@
+package de.uniulm.management;
+
+import org.apache.pulsar.client.admin.PulsarAdmin;
+import org.apache.pulsar.client.admin.PulsarAdminException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+// Local view of the sources of a namespace. The list is fetched once from the admin API and afterwards kept up to date
+// with the sources this function creates, so checking whether a thing already has its source needs no admin call.
+// The list is fetched again in the background once it is older than the refresh interval, to pick up sources that
+// were created or deleted by others.
+class SourceInventory {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceInventory.class);
+
+    private final PulsarAdmin admin;
+    private final String tenant;
+    private final String namespace;
+    private final long refreshAfterNanos;
+
+    // Source name to the time it was last seen
+    private final Map<String, Long> sources = new ConcurrentHashMap<>();
+    // Sources that are being created, a second build of the same thing must not create them again
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private volatile CompletableFuture<Void> loaded;
+    private volatile long loadedAt;
+
+    SourceInventory(PulsarAdmin admin, String tenant, String namespace, Duration refreshAfter) {
+        this.admin = admin;
+        this.tenant = tenant;
+        this.namespace = namespace;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+    }
+
+    // Completes once the list of sources has been fetched for the first time
+    synchronized CompletableFuture<Void> load() {
+        if (loaded == null || loaded.isCompletedExceptionally()) {
+            loaded = fetch();
+        }
+        return loaded;
+    }
+
+    // Reserves the source for creation. Returns false if the source exists or is already being created.
+    CompletableFuture<Boolean> reserve(String sourceName) {
+        return load().thenApply(loaded -> {
+            refreshIfStale();
+            return !sources.containsKey(sourceName) && pending.add(sourceName);
+        });
+    }
+
+    // Creates the reserved source. A source that has been created by someone else since the inventory was fetched
+    // counts as created.
+    CompletableFuture<Void> create(String sourceName, Supplier<CompletableFuture<Void>> creation) {
+        return run(creation).handle((result, error) -> {
+            pending.remove(sourceName);
+            Throwable cause = unwrap(error);
+
+            if (cause == null || cause instanceof PulsarAdminException.ConflictException) {
+                sources.put(sourceName, System.nanoTime());
+                return null;
+            }
+
+            throw new CompletionException(cause);
+        });
+    }
+
+    // Deletes the source. A source that has already been deleted by someone else counts as deleted.
+    CompletableFuture<Void> delete(String sourceName, Supplier<CompletableFuture<Void>> deletion) {
+        return run(deletion).handle((result, error) -> {
+            Throwable cause = unwrap(error);
+
+            if (cause == null || cause instanceof PulsarAdminException.NotFoundException) {
+                sources.remove(sourceName);
+                return null;
+            }
+
+            throw new CompletionException(cause);
+        });
+    }
+
+    boolean contains(String sourceName) {
+        return sources.containsKey(sourceName);
+    }
+
+    int size() {
+        return sources.size();
+    }
+
+    private static CompletableFuture<Void> run(Supplier<CompletableFuture<Void>> operation) {
+        try {
+            return operation.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private void refreshIfStale() {
+        if (System.nanoTime() - loadedAt > refreshAfterNanos && refreshing.compareAndSet(false, true)) {
+            fetch().whenComplete((result, error) -> refreshing.set(false));
+        }
+    }
+
+    private CompletableFuture<Void> fetch() {
+        long start = System.nanoTime();
+
+        return admin.sources().listSourcesAsync(tenant, namespace).thenAccept(names -> {
+            Set<String> listed = new HashSet<>(names);
+            // Sources created since the request was sent are kept, they may be missing in the response
+            sources.entrySet().removeIf(source -> !listed.contains(source.getKey()) && source.getValue() - start < 0);
+            listed.forEach(name -> sources.put(name, start));
+            loadedAt = start;
+            logger.debug("Fetched {} sources of {}/{}", names.size(), tenant, namespace);
+        });
+    }
+}
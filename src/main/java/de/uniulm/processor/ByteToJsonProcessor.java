@@ -1,25 +1,83 @@
 package de.uniulm.processor;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.uniulm.AbstractFunction;
-import de.uniulm.ditto.DittoSinkRequiredProperties;
+import de.uniulm.ditto.FeatureUpdate;
+import de.uniulm.util.PipelineMetrics;
+import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
 import org.apache.pulsar.functions.api.Context;
 import org.apache.pulsar.functions.api.Function;
+import org.apache.pulsar.functions.api.Record;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ByteToJsonProcessor extends AbstractFunction implements Function<byte[], Void> {
 
     private static final Logger logger = LoggerFactory.getLogger(ByteToJsonProcessor.class);
     private static final ObjectMapper mapper = new ObjectMapper();
+    private static final Schema<FeatureUpdate> featureUpdateSchema = Schema.JSON(FeatureUpdate.class);
+    private static final Schema<InfluxdbRecord> influxdbRecordSchema = Schema.JSON(InfluxdbRecord.class);
+
+    // "string" sends one string message per field for DittoSink, "featureUpdate" one FeatureUpdate per feature for
+    // DittoFeatureUpdateSink
+    static final String OUTPUT_FORMAT = "outputFormat";
+    static final String OUTPUT_FORMAT_STRING = "string";
+    static final String OUTPUT_FORMAT_FEATURE_UPDATE = "featureUpdate";
+
+    // "streaming" reads the fields from the parser tokens, "tree" builds a JsonNode tree first
+    static final String PARSER = "parser";
+    static final String PARSER_STREAMING = "streaming";
+    static final String PARSER_TREE = "tree";
+
+    // Key of the outgoing messages: "thing" (thingId), "feature" (thingId/featureId) or "none". With a key, several
+    // sink instances can consume the output topic with a Key_Shared subscription and keep the order per key.
+    static final String ROUTING_KEY = "routingKey";
+    static final String ROUTING_KEY_THING = "thing";
+    static final String ROUTING_KEY_FEATURE = "feature";
+    static final String ROUTING_KEY_NONE = "none";
+
+    // "json" sends one InfluxdbRecord per input message, "lineProtocol" batches line protocol points
+    static final String INFLUX_FORMAT = "influxFormat";
+    static final String INFLUX_FORMAT_JSON = "json";
+    static final String INFLUX_FORMAT_LINE_PROTOCOL = "lineProtocol";
+    static final String INFLUX_TOPIC = "influxTopic";
+    static final String INFLUX_MEASUREMENT = "influxMeasurement";
+    static final String INFLUX_BATCH_MAX_POINTS = "influxBatchMaxPoints";
+    static final String INFLUX_BATCH_MAX_BYTES = "influxBatchMaxBytes";
+    static final String INFLUX_BATCH_LINGER_MILLIS = "influxBatchLingerMillis";
+    static final String INFLUX_COMPRESSION = "influxCompression";
+
+    static final String METRICS_INTERVAL_SECONDS = "metricsIntervalSeconds";
+    static final String METRIC_RECORDS = "processor_records";
+    static final String METRIC_RECORDS_IGNORED = "processor_records_ignored";
+    static final String METRIC_RECORDS_FAILED = "processor_records_failed";
+    static final String METRIC_FIELDS_UNMAPPED = "processor_fields_unmapped";
+    static final String METRIC_OUTPUT_LATENCY = "processor_output_latency_ms";
+    static final String METRIC_IN_FLIGHT = "processor_in_flight_records";
+
+    private final AtomicInteger inFlightRecords = new AtomicInteger();
+    private volatile Settings settings;
+    private volatile PipelineMetrics metrics;
+    private volatile InfluxLineProtocolBatcher lineProtocolBatcher;
+    private String influxMeasurement;
 
     public ByteToJsonProcessor() {
         super(Arrays.stream(ByteToJsonProcessorRequiredProperties.values()).map(x -> x.propertyName).toList());
@@ -32,16 +90,27 @@ public class ByteToJsonProcessor extends AbstractFunction implements Function<by
 
     @Override
     public void close() throws Exception {
+        if (lineProtocolBatcher != null) {
+            lineProtocolBatcher.close();
+        }
+        if (metrics != null) {
+            metrics.close();
+        }
         Function.super.close();
     }
 
     @Override
     public Void process(byte[] input, Context context) throws Exception {
-        Map<String, String> properties = context.getCurrentRecord().getProperties();
-        JsonNode node;
+        // Captured once, the callbacks of the sends may run while the function already processes the next record
+        Record<?> inputRecord = context.getCurrentRecord();
+        Map<String, String> properties = inputRecord.getProperties();
+        Settings settings = getSettings(context);
+        PipelineMetrics metrics = getMetrics(context);
+        long start = System.nanoTime();
+        Map<String, Object> fields;
 
         try {
-            node = mapper.readTree(input);
+            fields = settings.treeParser() ? readTree(input) : readStreaming(input);
         } catch (Exception e) {
             logger.error("Received a byte message that was not JSON", e);
             throw e;
@@ -49,91 +118,268 @@ public class ByteToJsonProcessor extends AbstractFunction implements Function<by
 
         if (!allRequiredPropertiesPresent(properties.keySet())) {
             logger.warn("Ignoring record");
+            metrics.increment(METRIC_RECORDS_IGNORED);
             return null;
         }
 
-        Map<String, String> propertyNameToFeatureId = getPropertyNameToFeatureId(properties);
-        if (propertyNameToFeatureId == null) return null;
+        PropertyFeatureMapping mapping = PropertyFeatureMapping.of(properties.get(ByteToJsonProcessorRequiredProperties.PROPERTY_FEATURE_MAPPING.propertyName));
+        if (mapping == null) {
+            metrics.increment(METRIC_RECORDS_IGNORED);
+            return null;
+        }
+
+        metrics.increment(METRIC_RECORDS);
+        inFlightRecords.incrementAndGet();
 
         String thingId = properties.get(ByteToJsonProcessorRequiredProperties.THING_ID.propertyName);
-        Map<String, Object> influxdbFields = new HashMap<>();
+        long eventTime = inputRecord.getEventTime().orElse(Instant.now().toEpochMilli());
+        String routingKey = settings.routingKey();
+        Map<String, Map<String, Object>> featureProperties = new HashMap<>();
+        // Line protocol points per feature, fields without a feature under ""
+        Map<String, Map<String, Object>> featureFields = settings.lineProtocolOutput() ? new LinkedHashMap<>() : null;
+        List<CompletableFuture<?>> sends = new ArrayList<>(fields.size() + 1);
 
-        // Each json property will be sent in a new message and added to the influxdb record
-        for (Map.Entry<String, JsonNode> field : node.properties()) {
-            createAndSendScalarValue(context, field, propertyNameToFeatureId, thingId);
+        // A single walk over the fields: each json property is sent in a new message (or grouped per feature) and
+        // added to the influxdb output
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            String featureId = mapping.featureIdOf(field.getKey());
 
-            influxdbFields.put(field.getKey(), mapper.convertValue(field.getValue(), Object.class));
+            if (featureFields != null) {
+                featureFields.computeIfAbsent(featureId == null ? "" : featureId, key -> new LinkedHashMap<>())
+                        .put(field.getKey(), field.getValue());
+            }
+
+            if (featureId == null) {
+                logger.debug("Field {} could not be matched to any featureId. it will be ignored.", field.getKey());
+                metrics.increment(METRIC_FIELDS_UNMAPPED);
+            } else if (settings.featureUpdateOutput()) {
+                featureProperties.computeIfAbsent(featureId, key -> new HashMap<>()).put(field.getKey(), field.getValue());
+            } else {
+                sends.add(createAndSendScalarValue(context, field, featureId, mapping, thingId, eventTime, routingKey));
+            }
         }
 
-        var now = Instant.now();
-        var record = new InfluxdbRecord(thingId, context.getCurrentRecord().getEventTime().orElse(now.toEpochMilli()), new HashMap<>(), influxdbFields);
+        for (Map.Entry<String, Map<String, Object>> feature : featureProperties.entrySet()) {
+            sends.add(sendFeatureUpdate(context, new FeatureUpdate(thingId, feature.getKey(), feature.getValue(), eventTime), routingKey));
+        }
+
+        if (featureFields != null) {
+            addIfSent(sends, addLineProtocolPoints(context, thingId, eventTime, featureFields));
+        } else {
+            var record = new InfluxdbRecord(thingId, eventTime, new HashMap<>(), fields);
 
-        context.newOutputMessage("influxdb-record", Schema.JSON(InfluxdbRecord.class))
-                .value(record)
-                .sendAsync();
+            var message = context.newOutputMessage(settings.influxTopic(), influxdbRecordSchema)
+                    .value(record)
+                    .eventTime(eventTime);
+
+            sends.add(withKey(message, routingKey, thingId, null).sendAsync());
+        }
+
+        // The input record is acknowledged once, after all of its outputs have been persisted. If any of them fails,
+        // the record is failed once and redelivered as a whole.
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).whenComplete((a, error) -> {
+            inFlightRecords.decrementAndGet();
+            metrics.histogram(METRIC_OUTPUT_LATENCY).recordNanos(System.nanoTime() - start);
+
+            if (error != null) {
+                logger.error("Failed to send the outputs of a record of thing {}", thingId, error);
+                metrics.increment(METRIC_RECORDS_FAILED);
+                inputRecord.fail();
+            } else {
+                inputRecord.ack();
+            }
+        });
 
         return null;
     }
 
-    private static void createAndSendScalarValue(Context context, Map.Entry<String, JsonNode> field, Map<String, String> propertyNameToFeatureId, String thingId) throws IOException {
-        String featureId = propertyNameToFeatureId.get(field.getKey().toLowerCase());
+    private static void addIfSent(List<CompletableFuture<?>> sends, CompletableFuture<?> send) {
+        if (send != null) {
+            sends.add(send);
+        }
+    }
+
+    // One point per feature, tagged with thingId and featureId. Fields without a feature are written without that tag.
+    private CompletableFuture<Void> addLineProtocolPoints(Context context, String thingId, long eventTime,
+                                                          Map<String, Map<String, Object>> featureFields) {
+        InfluxLineProtocolBatcher batcher = getLineProtocolBatcher(context);
+        StringBuilder lines = new StringBuilder(64 * featureFields.size());
+        int points = 0;
+
+        for (Map.Entry<String, Map<String, Object>> feature : featureFields.entrySet()) {
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("thingId", thingId);
+            tags.put("featureId", feature.getKey());
 
-        if (featureId == null) {
-            logger.warn("Field {} could not be matched to any featureId. it will be ignored.", field.getKey());
-            return;
+            if (InfluxLineProtocol.appendPoint(lines, influxMeasurement, tags, feature.getValue(), eventTime)) {
+                points++;
+            }
         }
 
-        Map<String, String> outgoingMessageProperties = new HashMap<>();
-        outgoingMessageProperties.put(DittoSinkRequiredProperties.PROPERTY.propertyName, field.getKey());
-        outgoingMessageProperties.put(DittoSinkRequiredProperties.FEATURE_ID.propertyName, featureId);
-        outgoingMessageProperties.put(DittoSinkRequiredProperties.THING_ID.propertyName, thingId);
+        return points > 0 ? batcher.add(lines, points, eventTime) : null;
+    }
 
-        String stringPayload = jsonNodeToString(field.getValue());
+    // The user config does not change while the function runs, it is read on the first record
+    private Settings getSettings(Context context) {
+        Settings current = settings;
 
-        var future = context.newOutputMessage(context.getOutputTopic(), Schema.STRING)
-                .value(stringPayload)
-                .properties(outgoingMessageProperties)
-                .sendAsync();
+        if (current == null) {
+            synchronized (this) {
+                current = settings;
 
-        future.thenAccept(x -> {
-            context.getCurrentRecord().ack();
-        }).exceptionally(x -> {
-            context.getCurrentRecord().fail();
-            return null;
-        });
+                if (current == null) {
+                    current = new Settings(
+                            PARSER_TREE.equals(getUserConfig(context, PARSER, PARSER_STREAMING)),
+                            OUTPUT_FORMAT_FEATURE_UPDATE.equals(getUserConfig(context, OUTPUT_FORMAT, OUTPUT_FORMAT_STRING)),
+                            getUserConfig(context, ROUTING_KEY, ROUTING_KEY_THING),
+                            INFLUX_FORMAT_LINE_PROTOCOL.equals(getUserConfig(context, INFLUX_FORMAT, INFLUX_FORMAT_JSON)),
+                            getUserConfig(context, INFLUX_TOPIC, "influxdb-record"));
+                    settings = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private record Settings(boolean treeParser, boolean featureUpdateOutput, String routingKey, boolean lineProtocolOutput,
+                            String influxTopic) {
     }
 
-    private static Map<String, String> getPropertyNameToFeatureId(Map<String, String> properties) {
-        //Expected input format myJsonFieldName=myFeatureName;mySecondJsonFieldName=mySecondFeatureName
-        String mappings = properties.get(ByteToJsonProcessorRequiredProperties.PROPERTY_FEATURE_MAPPING.propertyName);
-        Map<String, String> propertyNameToFeatureId = new HashMap<>();
+    private PipelineMetrics getMetrics(Context context) {
+        PipelineMetrics current = metrics;
 
-        for (var mapping : mappings.split(";")) {
-            var splitMapping = mapping.split("=");
+        if (current == null) {
+            synchronized (this) {
+                current = metrics;
 
-            if (splitMapping.length != 2) {
-                logger.error("Invalid mapping: {}. Aborting.", mapping);
-                return null;
+                if (current == null) {
+                    current = new PipelineMetrics(context::recordMetric,
+                            Duration.ofSeconds(Long.parseLong(getUserConfig(context, METRICS_INTERVAL_SECONDS, "10"))));
+                    current.gauge(METRIC_IN_FLIGHT, inFlightRecords::get);
+                    metrics = current;
+                }
             }
-            propertyNameToFeatureId.put(splitMapping[0].toLowerCase(), splitMapping[1]);
         }
-        return propertyNameToFeatureId;
+        return current;
     }
 
-    // Converts the value of a JsonNode n to a String. If the value is another JsonObject, the object will be returned.
-    private static String jsonNodeToString(JsonNode n) throws IOException {
-        if (n == null || n.isNull()) {
-            return null;
+    private InfluxLineProtocolBatcher getLineProtocolBatcher(Context context) {
+        InfluxLineProtocolBatcher batcher = lineProtocolBatcher;
+
+        if (batcher == null) {
+            synchronized (this) {
+                batcher = lineProtocolBatcher;
+
+                if (batcher == null) {
+                    String topic = getUserConfig(context, INFLUX_TOPIC, "influxdb-line-protocol");
+                    boolean compress = "gzip".equals(getUserConfig(context, INFLUX_COMPRESSION, "none"));
+                    Map<String, String> messageProperties = compress
+                            ? Map.of("precision", "ms", "content-encoding", "gzip")
+                            : Map.of("precision", "ms");
+
+                    influxMeasurement = getUserConfig(context, INFLUX_MEASUREMENT, "ditto");
+                    batcher = new InfluxLineProtocolBatcher(
+                            (payload, eventTime) -> context.newOutputMessage(topic, Schema.BYTES)
+                                    .value(payload)
+                                    .properties(messageProperties)
+                                    .eventTime(eventTime)
+                                    .sendAsync(),
+                            Integer.parseInt(getUserConfig(context, INFLUX_BATCH_MAX_POINTS, "5000")),
+                            Integer.parseInt(getUserConfig(context, INFLUX_BATCH_MAX_BYTES, "1048576")),
+                            Long.parseLong(getUserConfig(context, INFLUX_BATCH_LINGER_MILLIS, "100")),
+                            compress);
+                    lineProtocolBatcher = batcher;
+                }
+            }
         }
+        return batcher;
+    }
 
-        if (n.isValueNode()) {
-            if (n.isTextual()) return n.textValue();
-            if (n.isNumber()) return n.numberValue().toString();
-            if (n.isBoolean()) return n.booleanValue() ? "true" : "false";
-            if (n.isBinary()) return new String(n.binaryValue());
-            return n.asText();
-        } else {
-            return mapper.writeValueAsString(n);
+    private static Map<String, Object> readTree(byte[] input) throws IOException {
+        JsonNode node = mapper.readTree(input);
+        Map<String, Object> fields = new LinkedHashMap<>();
+
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            fields.put(field.getKey(), mapper.convertValue(field.getValue(), Object.class));
+        }
+        return fields;
+    }
+
+    // Reads the top level fields directly from the parser tokens without building a JsonNode tree. Only nested objects
+    // and arrays are materialized (as Map/List). The parser buffers are recycled by the shared JsonFactory.
+    static Map<String, Object> readStreaming(byte[] input) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+
+            Map<String, Object> fields = new LinkedHashMap<>();
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+
+                Object value = switch (token) {
+                    case VALUE_STRING -> parser.getText();
+                    case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+                    case VALUE_TRUE -> Boolean.TRUE;
+                    case VALUE_FALSE -> Boolean.FALSE;
+                    case VALUE_NULL -> null;
+                    default -> mapper.readValue(parser, Object.class);
+                };
+
+                fields.put(name, value);
+            }
+
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "Unexpected token " + parser.currentToken());
+            }
+            return fields;
+        }
+    }
+
+    private static CompletableFuture<MessageId> createAndSendScalarValue(Context context, Map.Entry<String, Object> field, String featureId, PropertyFeatureMapping mapping, String thingId, long eventTime, String routingKey) throws IOException {
+        String stringPayload = valueToString(field.getValue());
+
+        var message = context.newOutputMessage(context.getOutputTopic(), Schema.STRING)
+                .value(stringPayload)
+                .properties(mapping.outgoingProperties(thingId, field.getKey(), featureId))
+                .eventTime(eventTime);
+
+        return withKey(message, routingKey, thingId, featureId).sendAsync();
+    }
+
+    private static <T> TypedMessageBuilder<T> withKey(TypedMessageBuilder<T> message, String routingKey, String thingId, String featureId) {
+        return switch (routingKey) {
+            case ROUTING_KEY_NONE -> message;
+            case ROUTING_KEY_FEATURE -> message.key(featureId == null ? thingId : thingId + "/" + featureId);
+            default -> message.key(thingId);
+        };
+    }
+
+    private static String getUserConfig(Context context, String key, String defaultValue) {
+        Object value = context.getUserConfigValueOrDefault(key, defaultValue);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    // Values keep their JSON types, DittoFeatureUpdateSink writes them without parsing strings. The event time is the
+    // timestamp of the update.
+    private static CompletableFuture<MessageId> sendFeatureUpdate(Context context, FeatureUpdate featureUpdate, String routingKey) throws IOException {
+        var message = context.newOutputMessage(context.getOutputTopic(), featureUpdateSchema)
+                .value(featureUpdate)
+                .eventTime(featureUpdate.getTimestamp());
+
+        return withKey(message, routingKey, featureUpdate.getThingId(), featureUpdate.getFeatureId()).sendAsync();
+    }
+
+    // Converts a field value to the String payload of DittoSink. Objects and arrays are sent as JSON.
+    private static String valueToString(Object value) throws IOException {
+        if (value == null || value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
         }
+        return mapper.writeValueAsString(value);
     }
 }
@@ -0,0 +1,97 @@
+package de.uniulm.processor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Map;
+
+// Encodes points in the InfluxDB line protocol: measurement,tag=value field=value timestamp
+final class InfluxLineProtocol {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private InfluxLineProtocol() {
+    }
+
+    // Appends one line and returns false if the point has no field that can be written (line protocol has no null)
+    static boolean appendPoint(StringBuilder builder, String measurement, Map<String, String> tags,
+                               Map<String, Object> fields, long timestampMillis) {
+        int start = builder.length();
+
+        appendEscaped(builder, measurement, false);
+
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (tag.getValue() == null || tag.getValue().isEmpty()) {
+                continue;
+            }
+            builder.append(',');
+            appendEscaped(builder, tag.getKey(), true);
+            builder.append('=');
+            appendEscaped(builder, tag.getValue(), true);
+        }
+
+        char separator = ' ';
+
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (field.getValue() == null) {
+                continue;
+            }
+            builder.append(separator);
+            appendEscaped(builder, field.getKey(), true);
+            builder.append('=');
+            appendFieldValue(builder, field.getValue());
+            separator = ',';
+        }
+
+        if (separator == ' ') {
+            builder.setLength(start);
+            return false;
+        }
+
+        builder.append(' ').append(timestampMillis).append('\n');
+        return true;
+    }
+
+    private static void appendFieldValue(StringBuilder builder, Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            builder.append(value).append('i');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            builder.append(value);
+        } else if (value instanceof String string) {
+            appendString(builder, string);
+        } else {
+            // Nested objects and arrays are stored as JSON strings
+            try {
+                appendString(builder, mapper.writeValueAsString(value));
+            } catch (JsonProcessingException e) {
+                appendString(builder, value.toString());
+            }
+        }
+    }
+
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    // Measurements escape commas and spaces, tag keys, tag values and field keys additionally equal signs
+    private static void appendEscaped(StringBuilder builder, String value, boolean escapeEquals) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == ' ' || (escapeEquals && c == '=')) {
+                builder.append('\\');
+            } else if (c == '\n') {
+                builder.append("\\n");
+                continue;
+            }
+            builder.append(c);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.uniulm.processor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.zip.GZIPOutputStream;
+
+// Collects line protocol points and sends them as one message once the batch holds the configured number of points or
+// bytes, or once the linger time since its first point has passed. All points of a batch complete together. A batch is
+// sent with the event time of its oldest input record.
+class InfluxLineProtocolBatcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(InfluxLineProtocolBatcher.class);
+
+    private final BiFunction<byte[], Long, CompletableFuture<?>> sender;
+    private final int maxPoints;
+    private final int maxBytes;
+    private final long lingerMillis;
+    private final boolean compress;
+    private final ScheduledExecutorService scheduler;
+
+    private Batch batch;
+
+    InfluxLineProtocolBatcher(BiFunction<byte[], Long, CompletableFuture<?>> sender, int maxPoints, int maxBytes,
+                              long lingerMillis, boolean compress) {
+        this.sender = sender;
+        this.maxPoints = maxPoints;
+        this.maxBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+        this.compress = compress;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "influx-line-protocol-batching");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Adds the encoded lines of one input record, the returned future completes once they have been sent
+    CompletableFuture<Void> add(CharSequence lines, int points, long eventTime) {
+        Batch ready = null;
+        CompletableFuture<Void> completion;
+
+        synchronized (this) {
+            if (batch == null) {
+                Batch created = new Batch();
+                created.linger = scheduler.schedule(() -> flush(created), lingerMillis, TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+
+            batch.lines.append(lines);
+            batch.points += points;
+            batch.eventTime = Math.min(batch.eventTime, eventTime);
+            completion = batch.completion;
+
+            // The line protocol is ASCII apart from string values, the length is close enough to the byte size
+            if (batch.points >= maxPoints || batch.lines.length() >= maxBytes) {
+                ready = batch;
+                batch = null;
+            }
+        }
+
+        if (ready != null) {
+            ready.linger.cancel(false);
+            send(ready);
+        }
+
+        return completion;
+    }
+
+    @Override
+    public void close() {
+        Batch pending;
+
+        synchronized (this) {
+            pending = batch;
+            batch = null;
+        }
+
+        if (pending != null) {
+            send(pending);
+        }
+        scheduler.shutdown();
+    }
+
+    private void flush(Batch expected) {
+        synchronized (this) {
+            // The batch has already been sent because it was full
+            if (batch != expected) {
+                return;
+            }
+            batch = null;
+        }
+
+        send(expected);
+    }
+
+    private void send(Batch batch) {
+        logger.debug("Sending {} line protocol points ({} chars)", batch.points, batch.lines.length());
+
+        try {
+            byte[] payload = batch.lines.toString().getBytes(StandardCharsets.UTF_8);
+
+            sender.apply(compress ? gzip(payload) : payload, batch.eventTime).whenComplete((a, error) -> {
+                if (error != null) {
+                    batch.completion.completeExceptionally(error);
+                } else {
+                    batch.completion.complete(null);
+                }
+            });
+        } catch (Exception e) {
+            batch.completion.completeExceptionally(e);
+        }
+    }
+
+    static byte[] gzip(byte[] payload) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length / 4 + 64);
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static class Batch {
+        private final StringBuilder lines = new StringBuilder();
+        private final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private int points;
+        private long eventTime = Long.MAX_VALUE;
+        private ScheduledFuture<?> linger;
+    }
+}
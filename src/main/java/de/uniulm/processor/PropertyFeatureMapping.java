@@ -0,0 +1,105 @@
+package de.uniulm.processor;
+
+import de.uniulm.ditto.DittoSinkRequiredProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Compiled form of the propertyFeatureMapping message property (myJsonFieldName=myFeatureName;...). All messages of a
+// source carry the same mapping string, so it is parsed once and cached by its string. Invalid mappings are cached as
+// well and rejected without parsing them again.
+final class PropertyFeatureMapping {
+
+    private static final Logger logger = LoggerFactory.getLogger(PropertyFeatureMapping.class);
+
+    private static final int MAX_CACHED_MAPPINGS = 1000;
+    private static final int MAX_CACHED_THINGS = 1000;
+    private static final PropertyFeatureMapping INVALID = new PropertyFeatureMapping(new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+    private static final Map<String, PropertyFeatureMapping> cache = new ConcurrentHashMap<>();
+
+    // Field names are matched case-insensitively, the comparator avoids lowercasing every field
+    private final TreeMap<String, String> featureIds;
+    // Field names as they appear in the messages, filled on the first lookup of a field
+    private final Map<String, String> resolvedFeatureIds = new ConcurrentHashMap<>();
+    // thingId -> field name -> outgoing message properties
+    private final Map<String, Map<String, Map<String, String>>> outgoingProperties = new ConcurrentHashMap<>();
+
+    private PropertyFeatureMapping(TreeMap<String, String> featureIds) {
+        this.featureIds = featureIds;
+    }
+
+    // Returns null if the mapping is invalid
+    static PropertyFeatureMapping of(String mappings) {
+        PropertyFeatureMapping mapping = cache.get(mappings);
+
+        if (mapping == null) {
+            mapping = compile(mappings);
+
+            if (cache.size() >= MAX_CACHED_MAPPINGS) {
+                cache.clear();
+            }
+            cache.put(mappings, mapping);
+        } else if (mapping == INVALID) {
+            logger.debug("Rejecting known invalid mapping {}", mappings);
+        }
+
+        return mapping == INVALID ? null : mapping;
+    }
+
+    private static PropertyFeatureMapping compile(String mappings) {
+        TreeMap<String, String> featureIds = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        for (var mapping : mappings.split(";")) {
+            var splitMapping = mapping.split("=");
+
+            if (splitMapping.length != 2) {
+                logger.error("Invalid mapping: {}. Aborting.", mapping);
+                return INVALID;
+            }
+            featureIds.put(splitMapping[0], splitMapping[1]);
+        }
+        return new PropertyFeatureMapping(featureIds);
+    }
+
+    // Returns null if the field is not mapped to a feature
+    String featureIdOf(String field) {
+        String featureId = resolvedFeatureIds.get(field);
+
+        if (featureId == null) {
+            featureId = featureIds.get(field);
+
+            // Only mapped fields are remembered, so arbitrary unmapped fields cannot grow the map
+            if (featureId != null) {
+                resolvedFeatureIds.put(field, featureId);
+            }
+        }
+        return featureId;
+    }
+
+    // The message builder copies the properties, so the same immutable map is used for every message of a property
+    Map<String, String> outgoingProperties(String thingId, String field, String featureId) {
+        Map<String, Map<String, String>> fields = outgoingProperties.get(thingId);
+
+        if (fields == null) {
+            if (outgoingProperties.size() >= MAX_CACHED_THINGS) {
+                outgoingProperties.clear();
+            }
+            fields = outgoingProperties.computeIfAbsent(thingId, key -> new ConcurrentHashMap<>());
+        }
+
+        Map<String, String> properties = fields.get(field);
+
+        if (properties == null) {
+            properties = Map.of(
+                    DittoSinkRequiredProperties.PROPERTY.propertyName, field,
+                    DittoSinkRequiredProperties.FEATURE_ID.propertyName, featureId,
+                    DittoSinkRequiredProperties.THING_ID.propertyName, thingId);
+            fields.put(field, properties);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,286 @@
+package de.uniulm.util;
+
+import org.eclipse.ditto.base.model.exceptions.DittoRuntimeException;
+import org.eclipse.ditto.client.DittoClient;
+import org.eclipse.ditto.things.model.ThingId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// A fixed number of Ditto WebSocket connections. Commands of a thing are always routed to the same connection, so
+// their order is kept. Connections that fail repeatedly are taken out of the rotation and reconnected with an
+// exponential backoff. Reconnects run in the background with a timeout, a connection that hangs while opening does not
+// hold up the reconnects of the other members.
+public class DittoClientPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(DittoClientPool.class);
+
+    private static final int VIRTUAL_NODES_PER_MEMBER = 128;
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long HEALTH_CHECK_INTERVAL_MILLIS = 1000;
+    private static final long CONNECT_TIMEOUT_MILLIS = 30_000;
+    private static final long INITIAL_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    public enum HashingStrategy {
+        // Hash ring with virtual nodes. Changing the pool size only moves a small share of the things.
+        CONSISTENT,
+        // Plain modulo of the thingId hash
+        MODULO
+    }
+
+    private final Member[] members;
+    private final NavigableMap<Integer, Integer> ring = new TreeMap<>();
+    private final HashingStrategy hashingStrategy;
+    private final Supplier<DittoClient> connector;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService connectExecutor;
+    private final long connectTimeoutMillis;
+    private volatile boolean closed;
+
+    public DittoClientPool(int size, HashingStrategy hashingStrategy, Supplier<DittoClient> connector) {
+        this(size, hashingStrategy, connector, HEALTH_CHECK_INTERVAL_MILLIS, CONNECT_TIMEOUT_MILLIS);
+    }
+
+    // Package-private so that tests can check the health of the members more often
+    DittoClientPool(int size, HashingStrategy hashingStrategy, Supplier<DittoClient> connector,
+                    long healthCheckIntervalMillis, long connectTimeoutMillis) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The pool size has to be positive");
+        }
+
+        this.hashingStrategy = hashingStrategy;
+        this.connector = connector;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.members = new Member[size];
+
+        for (int i = 0; i < size; i++) {
+            members[i] = new Member(i);
+
+            for (int v = 0; v < VIRTUAL_NODES_PER_MEMBER; v++) {
+                ring.put(hash("member-" + i + "-" + v), i);
+            }
+        }
+
+        int connected = 0;
+        RuntimeException lastError = null;
+
+        for (Member member : members) {
+            try {
+                member.client = connector.get();
+                connected++;
+            } catch (RuntimeException e) {
+                logger.warn("Could not open Ditto connection {} of the pool, retrying in the background", member.index, e);
+                member.markUnhealthy();
+                lastError = e;
+            }
+        }
+
+        if (connected == 0) {
+            throw lastError;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ditto-client-pool-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        connectExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ditto-client-pool-connect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reconnectUnhealthyMembers, healthCheckIntervalMillis,
+                healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("Opened Ditto client pool with {} of {} connections", connected, size);
+    }
+
+    public static DittoClientPool open(String username, String password, String websocketEndpoint, int size,
+                                       HashingStrategy hashingStrategy) {
+        return new DittoClientPool(size, hashingStrategy,
+                () -> DittoClientUtil.openDittoClient(username, password, websocketEndpoint));
+    }
+
+    public DittoClient clientFor(ThingId thingId) {
+        DittoClient client = memberFor(thingId).client;
+
+        if (client == null) {
+            throw new IllegalStateException("No Ditto connection available for thing " + thingId);
+        }
+
+        return client;
+    }
+
+    // For requests that do not concern a single thing, e.g. a search
+    public DittoClient anyClient() {
+        for (Member member : members) {
+            if (member.healthy && member.client != null) {
+                return member.client;
+            }
+        }
+
+        throw new IllegalStateException("No Ditto connection available");
+    }
+
+    // Reports the outcome of a command that was sent with the client of the given thing
+    public void report(ThingId thingId, Throwable error) {
+        Member member = memberFor(thingId);
+
+        if (error == null || isResponseFromDitto(error)) {
+            member.consecutiveFailures.set(0);
+        } else if (member.consecutiveFailures.incrementAndGet() >= FAILURE_THRESHOLD && member.healthy) {
+            logger.warn("Ditto connection {} of the pool failed {} times in a row, reconnecting", member.index, FAILURE_THRESHOLD);
+            member.markUnhealthy();
+        }
+    }
+
+    public int size() {
+        return members.length;
+    }
+
+    public int healthyMembers() {
+        int healthy = 0;
+        for (Member member : members) {
+            if (member.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    public void close() {
+        closed = true;
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            connectExecutor.shutdownNow();
+        }
+
+        for (Member member : members) {
+            if (member.client != null) {
+                member.client.destroy();
+            }
+        }
+    }
+
+    private Member memberFor(ThingId thingId) {
+        int hash = hash(thingId.toString());
+        int index;
+
+        if (hashingStrategy == HashingStrategy.MODULO) {
+            index = Math.floorMod(hash, members.length);
+        } else {
+            Map.Entry<Integer, Integer> node = ring.ceilingEntry(hash);
+            index = node != null ? node.getValue() : ring.firstEntry().getValue();
+        }
+
+        // Things of an unhealthy member temporarily use the next healthy one
+        for (int i = 0; i < members.length; i++) {
+            Member member = members[(index + i) % members.length];
+            if (member.healthy) {
+                return member;
+            }
+        }
+
+        return members[index];
+    }
+
+    private void reconnectUnhealthyMembers() {
+        long now = System.currentTimeMillis();
+
+        for (Member member : members) {
+            if (member.healthy || member.reconnecting || now < member.nextReconnectAt) {
+                continue;
+            }
+
+            member.reconnecting = true;
+            CompletableFuture<DittoClient> connecting = CompletableFuture.supplyAsync(connector, connectExecutor);
+
+            connecting.copy().orTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS).whenComplete((client, error) -> {
+                if (error != null) {
+                    // A connection that opens after the timeout is not used
+                    connecting.thenAccept(DittoClient::destroy);
+                    reconnectFailed(member, error);
+                } else {
+                    reconnected(member, client);
+                }
+            });
+        }
+    }
+
+    private void reconnected(Member member, DittoClient client) {
+        if (closed) {
+            client.destroy();
+            return;
+        }
+
+        DittoClient previous = member.client;
+        member.client = client;
+        member.consecutiveFailures.set(0);
+        member.reconnectAttempts = 0;
+        member.healthy = true;
+        member.reconnecting = false;
+        logger.info("Reconnected Ditto connection {} of the pool", member.index);
+
+        if (previous != null) {
+            previous.destroy();
+        }
+    }
+
+    private void reconnectFailed(Member member, Throwable error) {
+        member.reconnectAttempts++;
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS << Math.min(member.reconnectAttempts, 20));
+        member.nextReconnectAt = System.currentTimeMillis() + backoff;
+        member.reconnecting = false;
+        logger.warn("Reconnecting Ditto connection {} of the pool failed, next attempt in {} ms", member.index, backoff,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+    }
+
+    // Errors sent by Ditto itself (e.g. a missing thing) prove that the connection works
+    private static boolean isResponseFromDitto(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof DittoRuntimeException;
+    }
+
+    // FNV-1a, String.hashCode distributes similar thingIds poorly on the ring
+    private static int hash(String value) {
+        int hash = 0x811c9dc5;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static class Member {
+        private final int index;
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile DittoClient client;
+        private volatile boolean healthy = true;
+        private volatile long nextReconnectAt;
+        private volatile boolean reconnecting;
+        private int reconnectAttempts;
+
+        private Member(int index) {
+            this.index = index;
+        }
+
+        private void markUnhealthy() {
+            healthy = false;
+            nextReconnectAt = System.currentTimeMillis() + INITIAL_BACKOFF_MILLIS;
+        }
+    }
+}
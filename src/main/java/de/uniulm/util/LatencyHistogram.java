@@ -0,0 +1,95 @@
+package de.uniulm.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free log-linear histogram in the style of HdrHistogram. Values are recorded in microseconds into 32 sub-buckets
+// per power of two, which keeps the relative error of the reported percentiles below ~3%.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values of 2^41 us (~25 days) and above are counted in the last bucket
+    private static final int MAX_SHIFT = 40 - SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_SHIFT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void recordNanos(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    public void recordMicros(long micros) {
+        counts.incrementAndGet(indexOf(Math.max(0, micros)));
+    }
+
+    // Returns the counts recorded since the last snapshot and resets them
+    public Snapshot snapshotAndReset() {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.getAndSet(i, 0);
+            total += snapshot[i];
+        }
+        return new Snapshot(snapshot, total);
+    }
+
+    // Values below 32 us have their own bucket, above that the bucket width is 1/32 of the power of two of the value
+    static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+
+        int shift = (63 - Long.numberOfLeadingZeros(micros)) - SUB_BUCKET_BITS;
+
+        if (shift > MAX_SHIFT) {
+            return BUCKETS - 1;
+        }
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    public record Snapshot(long[] counts, long count) {
+
+        // Upper bound of the bucket holding the given percentile (0-100), in milliseconds
+        public double percentileMillis(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBoundMicros(i) / 1000.0;
+                }
+            }
+            return upperBoundMicros(counts.length - 1) / 1000.0;
+        }
+
+        public double maxMillis() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return upperBoundMicros(i) / 1000.0;
+                }
+            }
+            return 0;
+        }
+    }
+
+    static long upperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,87 @@
+package de.uniulm.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.ObjDoubleConsumer;
+
+// Aggregates the metrics of a sink or function in memory and publishes them periodically through recordMetric of the
+// Pulsar context. Recording is a few atomic operations, which keeps it off the hot path of the records.
+//
+// Per interval, counters publish the delta since the last interval, histograms publish <name>_p50, <name>_p99,
+// <name>_max and <name>_count in milliseconds, and gauges publish their current value.
+public class PipelineMetrics implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineMetrics.class);
+
+    private final Map<String, DoubleAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    private final ObjDoubleConsumer<String> publisher;
+    private final ScheduledExecutorService scheduler;
+
+    public PipelineMetrics(ObjDoubleConsumer<String> publisher, Duration interval) {
+        this.publisher = publisher;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::publish, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void count(String name, double delta) {
+        counters.computeIfAbsent(name, key -> new DoubleAdder()).add(delta);
+    }
+
+    public void increment(String name) {
+        count(name, 1);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public void gauge(String name, DoubleSupplier value) {
+        gauges.put(name, value);
+    }
+
+    public void publish() {
+        try {
+            counters.forEach((name, counter) -> {
+                double delta = counter.sumThenReset();
+                if (delta != 0) {
+                    publisher.accept(name, delta);
+                }
+            });
+
+            histograms.forEach((name, histogram) -> {
+                LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+                if (snapshot.count() > 0) {
+                    publisher.accept(name + "_p50", snapshot.percentileMillis(50));
+                    publisher.accept(name + "_p99", snapshot.percentileMillis(99));
+                    publisher.accept(name + "_max", snapshot.maxMillis());
+                    publisher.accept(name + "_count", snapshot.count());
+                }
+            });
+
+            gauges.forEach((name, gauge) -> publisher.accept(name, gauge.getAsDouble()));
+        } catch (Exception e) {
+            logger.warn("Failed to publish metrics", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        publish();
+    }
+}
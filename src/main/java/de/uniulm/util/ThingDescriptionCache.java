@@ -0,0 +1,250 @@
+package de.uniulm.util;
+
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.wot.model.ThingDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Process-wide cache of WoT ThingDescriptions keyed by their definition URL. Many things share the same definition,
+// so each description is only downloaded and parsed once. Entries older than the refresh interval are still served
+// while a conditional request (ETag / Last-Modified) revalidates them in the background.
+public class ThingDescriptionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThingDescriptionCache.class);
+
+    public static final long DEFAULT_MAX_WEIGHT_BYTES = 16L * 1024 * 1024;
+    public static final Duration DEFAULT_REFRESH_AFTER = Duration.ofMinutes(5);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final ThingDescriptionCache instance = new ThingDescriptionCache(HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build());
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong totalWeight = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final HttpClient httpClient;
+
+    private volatile long maxWeightBytes = DEFAULT_MAX_WEIGHT_BYTES;
+    private volatile long refreshAfterNanos = DEFAULT_REFRESH_AFTER.toNanos();
+
+    ThingDescriptionCache(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public static ThingDescriptionCache getInstance() {
+        return instance;
+    }
+
+    // The cache is shared by all components of the process, the last configuration wins
+    public void configure(long maxWeightBytes, Duration refreshAfter) {
+        this.maxWeightBytes = maxWeightBytes;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        evictIfNecessary();
+    }
+
+    public CompletableFuture<ThingDescription> get(String definitionUrl) {
+        Slot slot = slots.get(definitionUrl);
+
+        if (slot == null) {
+            Slot created = new Slot(new CompletableFuture<>());
+            slot = slots.putIfAbsent(definitionUrl, created);
+
+            if (slot == null) {
+                return load(definitionUrl, created);
+            }
+        }
+
+        slot.lastAccess = System.nanoTime();
+        CompletableFuture<Cached> current = slot.current;
+
+        if (current.isDone() && !current.isCompletedExceptionally()) {
+            Cached cached = current.join();
+
+            if (System.nanoTime() - cached.fetchedAt() > refreshAfterNanos) {
+                revalidate(definitionUrl, slot, cached);
+            }
+
+            return CompletableFuture.completedFuture(cached.description());
+        }
+
+        return current.thenApply(Cached::description);
+    }
+
+    public void invalidate(String definitionUrl) {
+        Slot slot = slots.remove(definitionUrl);
+
+        if (slot != null) {
+            release(slot);
+        }
+    }
+
+    public int size() {
+        return slots.size();
+    }
+
+    // Bytes of all cached descriptions
+    long weight() {
+        return totalWeight.get();
+    }
+
+    private CompletableFuture<ThingDescription> load(String definitionUrl, Slot slot) {
+        fetch(definitionUrl, null).whenComplete((cached, error) -> {
+            if (error != null) {
+                // Failed downloads are not cached, the next caller tries again
+                slots.remove(definitionUrl, slot);
+                slot.current.completeExceptionally(error);
+                return;
+            }
+
+            synchronized (slot) {
+                account(slot, cached);
+            }
+            slot.current.complete(cached);
+            evictIfNecessary();
+        });
+
+        return slot.current.thenApply(Cached::description);
+    }
+
+    private void revalidate(String definitionUrl, Slot slot, Cached stale) {
+        if (!slot.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        fetch(definitionUrl, stale).whenComplete((cached, error) -> {
+            try {
+                if (error != null) {
+                    logger.warn("Could not revalidate ThingDescription {}, serving the cached version", definitionUrl, error);
+                    return;
+                }
+
+                synchronized (slot) {
+                    slot.current = CompletableFuture.completedFuture(cached);
+                    account(slot, cached);
+                }
+                evictIfNecessary();
+            } finally {
+                slot.refreshing.set(false);
+            }
+        });
+    }
+
+    private CompletableFuture<Cached> fetch(String definitionUrl, Cached stale) {
+        HttpRequest.Builder request;
+
+        try {
+            request = HttpRequest.newBuilder(URI.create(definitionUrl)).timeout(REQUEST_TIMEOUT).GET();
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        if (stale != null && stale.etag() != null) {
+            request.header("If-None-Match", stale.etag());
+        }
+        if (stale != null && stale.lastModified() != null) {
+            request.header("If-Modified-Since", stale.lastModified());
+        }
+
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() == 304 && stale != null) {
+                        logger.debug("ThingDescription {} not modified", definitionUrl);
+                        return new Cached(stale.description(), stale.etag(), stale.lastModified(), stale.weight(), System.nanoTime());
+                    }
+
+                    if (response.statusCode() != 200) {
+                        throw new CompletionException(new IOException("Fetching ThingDescription " + definitionUrl +
+                                " failed with status " + response.statusCode()));
+                    }
+
+                    // The weight is the size of the response in bytes, not of the decoded string
+                    byte[] body = response.body();
+                    ThingDescription description = ThingDescription.fromJson(JsonObject.of(new String(body, StandardCharsets.UTF_8)));
+                    logger.info("Fetched ThingDescription {}", definitionUrl);
+
+                    return new Cached(description,
+                            response.headers().firstValue("ETag").orElse(null),
+                            response.headers().firstValue("Last-Modified").orElse(null),
+                            body.length,
+                            System.nanoTime());
+                });
+    }
+
+    private void evictIfNecessary() {
+        if (totalWeight.get() <= maxWeightBytes || !evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            var leastRecentlyUsed = slots.entrySet().stream()
+                    .filter(entry -> entry.getValue().current.isDone())
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccess))
+                    .toList();
+
+            for (Map.Entry<String, Slot> entry : leastRecentlyUsed) {
+                if (totalWeight.get() <= maxWeightBytes) {
+                    break;
+                }
+
+                if (slots.remove(entry.getKey(), entry.getValue())) {
+                    release(entry.getValue());
+                    logger.debug("Evicted ThingDescription {}", entry.getKey());
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // The weight of a slot changes under its lock, so that a revalidation and a removal of the same slot cannot leave
+    // the total weight off. A removed slot no longer counts, a revalidation that finishes afterwards adds nothing.
+    private void account(Slot slot, Cached cached) {
+        if (!slot.removed) {
+            totalWeight.addAndGet(cached.weight() - slot.weight);
+            slot.weight = cached.weight();
+        }
+    }
+
+    private void release(Slot slot) {
+        synchronized (slot) {
+            slot.removed = true;
+            totalWeight.addAndGet(-slot.weight);
+            slot.weight = 0;
+        }
+    }
+
+    private record Cached(ThingDescription description, String etag, String lastModified, int weight, long fetchedAt) {
+
+    }
+
+    private static class Slot {
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile CompletableFuture<Cached> current;
+        private volatile long lastAccess = System.nanoTime();
+        // Guarded by the slot
+        private int weight;
+        private boolean removed;
+
+        private Slot(CompletableFuture<Cached> current) {
+            this.current = current;
+        }
+    }
+}
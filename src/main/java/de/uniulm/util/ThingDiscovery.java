@@ -0,0 +1,147 @@
+package de.uniulm.util;
+
+import org.eclipse.ditto.things.model.Thing;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+// Consumes the pages of a Ditto search and runs an asynchronous action for each thing found, e.g. building its
+// topology. The things of a page are queued and at most `concurrency` actions run at a time. The next page is only
+// requested once fewer things than `concurrency` are queued, so at most about one page and `concurrency` actions are
+// held at a time, independent of the number of things matching the search.
+public class ThingDiscovery implements Subscriber<List<Thing>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThingDiscovery.class);
+
+    public record Result(int discovered, int failed) {
+    }
+
+    private final Function<Thing, CompletableFuture<Void>> action;
+    private final int concurrency;
+
+    private final Queue<Thing> queued = new ArrayDeque<>();
+    private final AtomicInteger discovered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final CompletableFuture<Result> done = new CompletableFuture<>();
+
+    private Subscription subscription;
+    private int inFlight;
+    private boolean starting;
+    private boolean pageRequested;
+    private boolean searchCompleted;
+
+    public ThingDiscovery(Function<Thing, CompletableFuture<Void>> action, int concurrency) {
+        this.action = action;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    // Completes once the search has ended and all actions have finished
+    public CompletableFuture<Result> done() {
+        return done;
+    }
+
+    public synchronized void cancel() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        queued.clear();
+        searchCompleted = true;
+        completeIfFinished();
+    }
+
+    @Override
+    public synchronized void onSubscribe(Subscription subscription) {
+        this.subscription = subscription;
+        requestPageIfLow();
+    }
+
+    @Override
+    public synchronized void onNext(List<Thing> page) {
+        pageRequested = false;
+
+        if (!searchCompleted) {
+            for (Thing thing : page) {
+                if (thing.getEntityId().isPresent()) {
+                    discovered.incrementAndGet();
+                    queued.add(thing);
+                }
+            }
+        }
+
+        startActions();
+        requestPageIfLow();
+    }
+
+    @Override
+    public synchronized void onError(Throwable throwable) {
+        logger.error("Search for things to discover failed after {} things", discovered.get(), throwable);
+        searchCompleted = true;
+        completeIfFinished();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        searchCompleted = true;
+        completeIfFinished();
+    }
+
+    // Actions that complete right away finish within the loop, they only free their slot and let the loop continue
+    private void startActions() {
+        if (starting) {
+            return;
+        }
+        starting = true;
+
+        try {
+            while (inFlight < concurrency && !queued.isEmpty()) {
+                Thing thing = queued.poll();
+                inFlight++;
+
+                CompletableFuture<Void> future;
+                try {
+                    future = action.apply(thing);
+                } catch (RuntimeException e) {
+                    future = CompletableFuture.failedFuture(e);
+                }
+
+                future.whenComplete((result, error) -> {
+                    if (error != null) {
+                        failed.incrementAndGet();
+                        logger.error("Discovered thing {} could not be processed", thing.getEntityId().orElseThrow(), error);
+                    }
+                    onActionFinished();
+                });
+            }
+        } finally {
+            starting = false;
+        }
+    }
+
+    private synchronized void onActionFinished() {
+        inFlight--;
+        startActions();
+        requestPageIfLow();
+        completeIfFinished();
+    }
+
+    private void requestPageIfLow() {
+        if (subscription != null && !pageRequested && !searchCompleted && queued.size() < concurrency) {
+            pageRequested = true;
+            subscription.request(1);
+        }
+    }
+
+    private void completeIfFinished() {
+        if (searchCompleted && inFlight == 0 && queued.isEmpty()) {
+            done.complete(new Result(discovered.get(), failed.get()));
+        }
+    }
+}
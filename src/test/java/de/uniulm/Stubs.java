@@ -0,0 +1,89 @@
+package de.uniulm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// Lightweight stubs for the benchmarks and the load driver. Mockito records every invocation, which would dominate the
+// measured time.
+//
+// A stub answers the methods in its answer map by name. Methods returning the stubbed type itself (builders) return the
+// stub, also if their answer returns null. Methods returning another interface return a cached stub of that interface
+// with the same answers, default methods run their implementation and everything else returns an empty value.
+public final class Stubs {
+
+    private Stubs() {
+    }
+
+    public static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        return stub(type, answers, new ConcurrentHashMap<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers, Map<Class<?>, Object> stubs) {
+        return (T) stubs.computeIfAbsent(type, key -> Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type},
+                new Handler(type, answers, stubs)));
+    }
+
+    private record Handler(Class<?> type, Map<String, Function<Object[], Object>> answers,
+                           Map<Class<?>, Object> stubs) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object[] arguments = args == null ? new Object[0] : args;
+
+            switch (method.getName()) {
+                case "hashCode":
+                    if (arguments.length == 0) return System.identityHashCode(proxy);
+                    break;
+                case "equals":
+                    if (arguments.length == 1) return proxy == arguments[0];
+                    break;
+                case "toString":
+                    if (arguments.length == 0) return "Stub of " + type.getSimpleName();
+                    break;
+                default:
+                    break;
+            }
+
+            Function<Object[], Object> answer = answers.get(method.getName());
+
+            Class<?> returnType = method.getReturnType();
+
+            if (answer != null) {
+                Object result = answer.apply(arguments);
+                return result == null && returnType.isInstance(proxy) ? proxy : result;
+            }
+
+            if (returnType.isInstance(proxy)) {
+                return proxy;
+            }
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            if (returnType == Optional.class) {
+                return Optional.empty();
+            }
+            if (returnType == boolean.class) {
+                return false;
+            }
+            if (returnType == int.class) {
+                return 0;
+            }
+            if (returnType == long.class) {
+                return 0L;
+            }
+            if (returnType == double.class) {
+                return 0.0;
+            }
+            if (returnType.isInterface() && !returnType.getName().startsWith("java.")) {
+                return stub(returnType, answers, stubs);
+            }
+            return null;
+        }
+    }
+}
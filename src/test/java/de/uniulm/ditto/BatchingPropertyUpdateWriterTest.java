@@ -0,0 +1,117 @@
+package de.uniulm.ditto;
+
+import de.uniulm.util.DittoClientPool;
+import org.eclipse.ditto.client.DittoClient;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.things.model.ThingId;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BatchingPropertyUpdateWriterTest {
+
+    private final ThingId thingId = ThingId.of("test:thing");
+    private final DittoClient client = mock(DittoClient.class, RETURNS_DEEP_STUBS);
+    private final DittoClientPool clientPool = mock(DittoClientPool.class);
+    private final List<JsonObject> merged = new CopyOnWriteArrayList<>();
+
+    @Test
+    void propertiesOfAFeatureAreMergedInOneCommand() {
+        stubMerge(CompletableFuture.completedFuture(null));
+        var writer = new BatchingPropertyUpdateWriter(clientPool, 3, 60_000, (latency, error) -> {
+        });
+
+        var first = writer.write(update("temperature", 21));
+        var second = writer.write(update("humidity", 40));
+        var third = writer.write(update("temperature", 22));
+
+        assertNull(CompletableFuture.allOf(first, second, third).join());
+        assertEquals(List.of(JsonFactory.readFrom("{\"temperature\": 22, \"humidity\": 40}")), merged);
+        writer.close();
+    }
+
+    @Test
+    void batchIsSentOnceItHoldsTheMaximumNumberOfUpdates() {
+        stubMerge(CompletableFuture.completedFuture(null));
+        var writer = new BatchingPropertyUpdateWriter(clientPool, 2, 60_000, (latency, error) -> {
+        });
+
+        var first = writer.write(update("temperature", 21));
+        assertFalse(first.isDone());
+        assertTrue(merged.isEmpty());
+
+        writer.write(update("humidity", 40));
+        assertTrue(first.isDone());
+        assertEquals(1, merged.size());
+
+        // The next update starts a new batch
+        assertFalse(writer.write(update("temperature", 22)).isDone());
+        writer.close();
+    }
+
+    @Test
+    void batchIsSentAfterTheLingerTime() throws Exception {
+        stubMerge(CompletableFuture.completedFuture(null));
+        var writer = new BatchingPropertyUpdateWriter(clientPool, 100, 20, (latency, error) -> {
+        });
+
+        writer.write(update("temperature", 21)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(JsonFactory.readFrom("{\"temperature\": 21}")), merged);
+        writer.close();
+    }
+
+    @Test
+    void allUpdatesOfABatchFailIfTheMergeFails() {
+        stubMerge(CompletableFuture.failedFuture(new IllegalStateException("connection closed")));
+        var writer = new BatchingPropertyUpdateWriter(clientPool, 2, 60_000, (latency, error) -> {
+        });
+
+        var first = writer.write(update("temperature", 21));
+        var second = writer.write(update("humidity", 40));
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+        writer.close();
+    }
+
+    @Test
+    void latencyDoesNotIncludeTheLingerTime() {
+        CompletableFuture<Void> merge = new CompletableFuture<>();
+        stubMerge(merge);
+
+        List<Long> latencies = new CopyOnWriteArrayList<>();
+        var writer = new BatchingPropertyUpdateWriter(clientPool, 100, 200, (latency, error) -> latencies.add(latency));
+
+        var first = writer.write(update("temperature", 21));
+        var second = writer.write(update("humidity", 40));
+        verify(client.twin().forId(thingId).forFeature("sensor"), timeout(1000)).mergeProperties(any());
+        merge.complete(null);
+
+        assertNull(CompletableFuture.allOf(first, second).join());
+        assertEquals(1, latencies.size());
+        assertTrue(latencies.get(0) < TimeUnit.MILLISECONDS.toNanos(200), "latency " + latencies.get(0));
+        writer.close();
+    }
+
+    private void stubMerge(CompletableFuture<Void> result) {
+        when(clientPool.clientFor(thingId)).thenReturn(client);
+        when(client.twin().forId(thingId).forFeature("sensor").mergeProperties(any())).thenAnswer(invocation -> {
+            merged.add(invocation.getArgument(0));
+            return result;
+        });
+    }
+
+    private PropertyUpdate update(String property, int value) {
+        return new PropertyUpdate(new PropertyIdentifier(thingId, "sensor", property), JsonValue.of(value));
+    }
+}
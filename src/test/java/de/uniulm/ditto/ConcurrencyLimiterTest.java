@@ -0,0 +1,128 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.base.model.exceptions.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void fixedLimitDoesNotAdapt() {
+        var limiter = ConcurrencyLimiter.fixed(2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.onSample(SLOW, TooManyRequestsException.newBuilder().build());
+        assertEquals(2, limiter.limit());
+
+        limiter.release(true);
+        assertEquals(2, limiter.limit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void limitGrowsWhileTheWindowIsInUse() {
+        var limiter = ConcurrencyLimiter.adaptive(4, 2, 6, 2.0);
+
+        // Idle, no evidence that Ditto handles more
+        limiter.acquire();
+        limiter.onSample(FAST, null);
+        limiter.release(true);
+        assertEquals(4, limiter.limit());
+
+        fill(limiter);
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample(FAST, null);
+            limiter.release(true);
+            fill(limiter);
+        }
+        assertEquals(6, limiter.limit());
+    }
+
+    @Test
+    void onlyAcknowledgedRecordsGrowTheLimit() {
+        var limiter = ConcurrencyLimiter.adaptive(4, 2, 100, 2.0);
+        fill(limiter);
+
+        // A batched command completes several records, the commands themselves do not count
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample(FAST, null);
+        }
+        assertEquals(4, limiter.limit());
+
+        limiter.release(false);
+        assertEquals(4, limiter.limit());
+
+        fill(limiter);
+        limiter.release(true);
+        limiter.release(true);
+        assertEquals(6, limiter.limit());
+    }
+
+    @Test
+    void limitShrinksOnThrottling() {
+        var limiter = ConcurrencyLimiter.adaptive(10, 2, 100, 2.0);
+
+        limiter.onSample(FAST, new CompletionException(TooManyRequestsException.newBuilder().build()));
+        assertEquals(7, limiter.limit());
+
+        // Commands sent before the decrease report the same overload
+        limiter.onSample(FAST, TooManyRequestsException.newBuilder().build());
+        assertEquals(7, limiter.limit());
+    }
+
+    @Test
+    void limitShrinksOnRisingLatencyAndRecovers() {
+        var limiter = ConcurrencyLimiter.adaptive(10, 2, 100, 2.0);
+        fill(limiter);
+
+        limiter.onSample(FAST, null);
+        limiter.release(true);
+        assertEquals(11, limiter.limit());
+
+        // No growth while the latest command was slow
+        limiter.onSample(SLOW, null);
+        limiter.release(true);
+        assertEquals(9, limiter.limit());
+
+        limiter.onSample(FAST, null);
+        limiter.release(true);
+        assertEquals(10, limiter.limit());
+    }
+
+    @Test
+    void limitStaysWithinItsBounds() {
+        var limiter = ConcurrencyLimiter.adaptive(3, 2, 100, 2.0);
+
+        for (int i = 0; i < 5; i++) {
+            limiter.onSample(0, TooManyRequestsException.newBuilder().build());
+        }
+        assertEquals(2, limiter.limit());
+    }
+
+    @Test
+    void awaitIdleWaitsForReleases() throws Exception {
+        var limiter = ConcurrencyLimiter.fixed(2);
+        limiter.acquire();
+
+        assertFalse(limiter.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        new Thread(() -> limiter.release(true)).start();
+        assertTrue(limiter.awaitIdle(5, TimeUnit.SECONDS));
+    }
+
+    private static void fill(ConcurrencyLimiter limiter) {
+        while (limiter.tryAcquire()) {
+            // Takes the whole window
+        }
+    }
+}
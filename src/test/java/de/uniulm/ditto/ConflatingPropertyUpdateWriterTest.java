@@ -0,0 +1,72 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.things.model.ThingId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflatingPropertyUpdateWriterTest {
+
+    private final PropertyIdentifier identifier = new PropertyIdentifier(ThingId.of("test:test"), "feature1", "myValue");
+
+    @Test
+    void onlyNewestPendingValueIsSent() {
+        List<PropertyUpdate> sent = new ArrayList<>();
+        List<CompletableFuture<Void>> completions = new ArrayList<>();
+        AtomicInteger conflated = new AtomicInteger();
+
+        var writer = new ConflatingPropertyUpdateWriter(update -> {
+            sent.add(update);
+            var completion = new CompletableFuture<Void>();
+            completions.add(completion);
+            return completion;
+        }, (name, value) -> conflated.addAndGet((int) value));
+
+        var first = writer.write(new PropertyUpdate(identifier, JsonValue.of(1)));
+        var second = writer.write(new PropertyUpdate(identifier, JsonValue.of(2)));
+        var third = writer.write(new PropertyUpdate(identifier, JsonValue.of(3)));
+
+        assertEquals(1, sent.size());
+
+        completions.get(0).complete(null);
+
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        assertEquals(2, sent.size());
+        assertEquals(JsonValue.of(3), sent.get(1).value());
+
+        completions.get(1).complete(null);
+
+        assertTrue(second.isDone());
+        assertTrue(third.isDone());
+        assertEquals(1, conflated.get());
+    }
+
+    @Test
+    void supersededUpdatesFailWithNewerValue() {
+        List<CompletableFuture<Void>> completions = new ArrayList<>();
+
+        var writer = new ConflatingPropertyUpdateWriter(update -> {
+            var completion = new CompletableFuture<Void>();
+            completions.add(completion);
+            return completion;
+        }, (name, value) -> {
+        });
+
+        writer.write(new PropertyUpdate(identifier, JsonValue.of(1)));
+        var second = writer.write(new PropertyUpdate(identifier, JsonValue.of(2)));
+        var third = writer.write(new PropertyUpdate(identifier, JsonValue.of(3)));
+
+        completions.get(0).complete(null);
+        completions.get(1).completeExceptionally(new IllegalStateException("Ditto not reachable"));
+
+        assertTrue(second.isCompletedExceptionally());
+        assertTrue(third.isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,117 @@
+package de.uniulm.ditto;
+
+import de.uniulm.fake.FakeDittoServer;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DittoFeatureUpdateSinkTest {
+
+    private FakeDittoServer server;
+    private SinkContext sinkContext;
+    private DittoFeatureUpdateSink sink;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeDittoServer(Path.of("src/test/resources/wot"));
+        server.putThing("test:sensor", JsonFactory.readFrom("{\"features\": {\"sensor\": {\"definition\": [\""
+                + server.descriptionUrl("load-sensor.jsonld") + "\"], \"properties\": {}}}}").asObject());
+
+        sinkContext = mock(SinkContext.class);
+        sink = new DittoFeatureUpdateSink();
+        sink.open(Map.of("dittoUsername", "ditto", "dittoPassword", "ditto", "websocketEndpoint", server.endpoint()),
+                sinkContext);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (sink != null) {
+            sink.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void recordIsAckedOnceEveryPropertyIsUpdated() throws Exception {
+        server.latency(Duration.ofMillis(100), Duration.ZERO);
+        Record<FeatureUpdate> record = record(new FeatureUpdate("test:sensor", "sensor",
+                Map.of("temperature", 21.5, "humidity", 40.5), 0));
+
+        List<JsonObject> thingAtAck = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> thingAtAck.add(server.thing("test:sensor"))).when(record).ack();
+
+        sink.write(record);
+        verify(record, never()).ack();
+
+        verify(record, timeout(5000)).ack();
+        verify(record, never()).fail();
+        assertEquals(21.5, thingAtAck.get(0).getValue("features/sensor/properties/temperature").orElseThrow().asDouble());
+        assertEquals(40.5, thingAtAck.get(0).getValue("features/sensor/properties/humidity").orElseThrow().asDouble());
+    }
+
+    @Test
+    void incompleteRecordIsIgnored() throws Exception {
+        Record<FeatureUpdate> withoutThing = record(new FeatureUpdate(null, "sensor", Map.of("temperature", 21.5), 0));
+        Record<FeatureUpdate> withoutFeature = record(new FeatureUpdate("test:sensor", null, Map.of("temperature", 21.5), 0));
+
+        sink.write(withoutThing);
+        sink.write(withoutFeature);
+
+        assertEquals(0, server.commandCount());
+        verify(withoutThing, never()).fail();
+        verify(withoutFeature, never()).fail();
+    }
+
+    @Test
+    void oneFailedPropertyFailsTheRecord() throws Exception {
+        // The description of the feature has no property "unknown"
+        Record<FeatureUpdate> record = record(new FeatureUpdate("test:sensor", "sensor",
+                Map.of("temperature", 21.5, "unknown", 1), 0));
+
+        sink.write(record);
+
+        verify(record, timeout(5000)).fail();
+        verify(record, never()).ack();
+    }
+
+    @Test
+    void eventToAckStartsAtTheTimestampOfTheUpdate() throws Exception {
+        Record<FeatureUpdate> record = record(new FeatureUpdate("test:sensor", "sensor", Map.of("temperature", 21.5),
+                System.currentTimeMillis() - 60_000));
+
+        sink.write(record);
+        verify(record, timeout(5000)).ack();
+
+        // Publishes the metrics a last time
+        sink.close();
+        sink = null;
+
+        verify(sinkContext).recordMetric("ditto_event_to_ack_ms_count", 1);
+        verify(sinkContext).recordMetric(eq("ditto_event_to_ack_ms_max"), doubleThat(latency -> latency >= 60_000));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Record<FeatureUpdate> record(FeatureUpdate featureUpdate) {
+        Record<FeatureUpdate> record = mock(Record.class);
+        when(record.getValue()).thenReturn(featureUpdate);
+        when(record.getProperties()).thenReturn(Map.of());
+        when(record.getEventTime()).thenReturn(Optional.empty());
+        return record;
+    }
+}
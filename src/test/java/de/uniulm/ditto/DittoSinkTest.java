@@ -0,0 +1,235 @@
+package de.uniulm.ditto;
+
+import de.uniulm.fake.FakeDittoServer;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class DittoSinkTest {
+
+    private FakeDittoServer server;
+    private SinkContext sinkContext;
+    private DittoSink sink;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeDittoServer(Path.of("src/test/resources/wot"));
+        server.putThing("test:sensor", JsonFactory.readFrom("{\"features\": {\"sensor\": {\"definition\": [\""
+                + server.descriptionUrl("load-sensor.jsonld") + "\"], \"properties\": {}}}}").asObject());
+        sinkContext = mock(SinkContext.class, RETURNS_DEEP_STUBS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (sink != null) {
+            sink.close();
+        }
+        server.close();
+    }
+
+    @Test
+    void recordIsAckedOnlyOnceDittoPersistedTheUpdate() throws Exception {
+        open(Map.of());
+        server.latency(Duration.ofMillis(100), Duration.ZERO);
+        Record<String> record = record("temperature", "21.5");
+
+        List<Double> temperatureAtAck = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> temperatureAtAck.add(temperature())).when(record).ack();
+
+        sink.write(record);
+        verify(record, never()).ack();
+
+        verify(record, timeout(5000)).ack();
+        verify(record, never()).fail();
+        assertEquals(List.of(21.5), temperatureAtAck);
+    }
+
+    @Test
+    void inFlightSlotIsReleasedOnSuccessAndFailure() throws Exception {
+        open(Map.of("maxInFlightUpdates", "1"));
+        // Not a number, fails permanently
+        Record<String> failing = record("temperature", "warm");
+        Record<String> succeeding = record("temperature", "21.5");
+        Record<String> last = record("humidity", "40.5");
+
+        sink.write(failing);
+        verify(failing, timeout(5000)).fail();
+
+        // Each write waits for a free slot, it would block forever if the previous record kept its slot
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> sink.write(succeeding));
+        verify(succeeding, timeout(5000)).ack();
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> sink.write(last));
+        verify(last, timeout(5000)).ack();
+    }
+
+    @Test
+    void closeWaitsForPendingUpdates() throws Exception {
+        open(Map.of());
+        server.latency(Duration.ofMillis(200), Duration.ZERO);
+        Record<String> record = record("temperature", "21.5");
+
+        sink.write(record);
+        closeSink();
+
+        verify(record).ack();
+        assertEquals(21.5, temperature());
+    }
+
+    @Test
+    void transientFailureIsRetried() throws Exception {
+        open(Map.of("retryInitialBackoffMillis", "50"));
+        Record<String> record = record("temperature", "21.5");
+
+        failFirstAttempt(record);
+
+        verify(record, timeout(5000)).ack();
+        verify(record, never()).fail();
+        assertEquals(21.5, temperature());
+        closeSink();
+        verify(sinkContext).recordMetric(eq("ditto_update_retries"), doubleThat(retries -> retries >= 1));
+    }
+
+    @Test
+    void recordIsFailedOnceTheAttemptsAreUsedUp() throws Exception {
+        open(Map.of("retryInitialBackoffMillis", "10", "retryMaxAttempts", "3"));
+        server.errorRate(1);
+        Record<String> record = record("temperature", "21.5");
+
+        sink.write(record);
+
+        verify(record, timeout(5000)).fail();
+        verify(record, never()).ack();
+        closeSink();
+        verify(sinkContext).recordMetric("ditto_update_retries", 2);
+    }
+
+    @Test
+    void permanentFailureAfterARetryIsDeadLettered() throws Exception {
+        TypedMessageBuilder<byte[]> deadLetter = deadLetterMessage();
+        open(Map.of("retryInitialBackoffMillis", "50", "deadLetterTopic", "dead-letters"));
+        // Not a number
+        Record<String> record = record("temperature", "warm");
+
+        failFirstAttempt(record);
+
+        verify(record, timeout(5000)).ack();
+        verify(record, never()).fail();
+        verify(deadLetter).value("warm".getBytes());
+        verify(deadLetter).property(eq("ditto-sink-error"), contains("InvalidValueException"));
+        verify(deadLetter).sendAsync();
+        closeSink();
+        verify(sinkContext).recordMetric("ditto_records_dead_lettered", 1);
+    }
+
+    @Test
+    void supersededRetryDoesNotOverwriteTheNewerValue() throws Exception {
+        // The retry of the first record runs after the second record was written
+        open(Map.of("retryInitialBackoffMillis", "1000"));
+        Record<String> first = record("temperature", "21.5");
+        Record<String> second = record("temperature", "22.5");
+
+        failFirstAttempt(first);
+        sink.write(second);
+
+        verify(second, timeout(5000)).ack();
+        verify(first, timeout(5000)).ack();
+        assertEquals(22.5, temperature());
+        assertTrue(sink.latestUpdates.isEmpty());
+        closeSink();
+        verify(sinkContext).recordMetric("ditto_retries_superseded", 1);
+    }
+
+    @Test
+    void latestUpdatesAreReleasedWithTheirRecords() throws Exception {
+        open(Map.of());
+        Record<String> temperature = record("temperature", "21.5");
+        Record<String> humidity = record("humidity", "40.5");
+
+        sink.write(temperature);
+        sink.write(humidity);
+
+        verify(temperature, timeout(5000)).ack();
+        verify(humidity, timeout(5000)).ack();
+        assertTrue(sink.latestUpdates.isEmpty());
+    }
+
+    // Fails the first attempt of the record, later attempts succeed
+    private void failFirstAttempt(Record<String> record) throws Exception {
+        server.errorRate(1);
+        long commands = server.commandCount();
+
+        sink.write(record);
+
+        while (server.commandCount() == commands) {
+            Thread.sleep(10);
+        }
+        // The injected error is decided when the response is sent
+        Thread.sleep(100);
+        server.errorRate(0);
+    }
+
+    private void open(Map<String, Object> config) throws Exception {
+        Map<String, Object> sinkConfig = new HashMap<>(config);
+        sinkConfig.put("dittoUsername", "ditto");
+        sinkConfig.put("dittoPassword", "ditto");
+        sinkConfig.put("websocketEndpoint", server.endpoint());
+
+        sink = new DittoSink();
+        sink.open(sinkConfig, sinkContext);
+    }
+
+    // Publishes the metrics a last time
+    private void closeSink() throws Exception {
+        sink.close();
+        sink = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypedMessageBuilder<byte[]> deadLetterMessage() throws Exception {
+        Producer<byte[]> producer = mock(Producer.class);
+        TypedMessageBuilder<byte[]> message = mock(TypedMessageBuilder.class, RETURNS_SELF);
+
+        when(sinkContext.getPulsarClient().newProducer(Schema.BYTES).topic(anyString()).create()).thenReturn(producer);
+        when(producer.newMessage()).thenReturn(message);
+        when(message.sendAsync()).thenReturn(CompletableFuture.completedFuture(MessageId.latest));
+        return message;
+    }
+
+    private double temperature() {
+        return server.thing("test:sensor").getValue("features/sensor/properties/temperature")
+                .map(JsonValue::asDouble)
+                .orElseThrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Record<String> record(String property, String value) {
+        Record<String> record = mock(Record.class);
+        when(record.getValue()).thenReturn(value);
+        when(record.getProperties()).thenReturn(Map.of("thingId", "test:sensor", "featureId", "sensor", "property", property));
+        when(record.getMessage()).thenReturn(Optional.empty());
+        when(record.getEventTime()).thenReturn(Optional.empty());
+        when(record.getKey()).thenReturn(Optional.empty());
+        return record;
+    }
+}
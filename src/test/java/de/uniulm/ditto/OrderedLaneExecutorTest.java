@@ -0,0 +1,89 @@
+package de.uniulm.ditto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderedLaneExecutorTest {
+
+    @Test
+    void tasksOfSameKeyWaitForPreviousCompletion() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        var lanes = new OrderedLaneExecutor(4, 10, executor);
+        List<String> started = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> firstCompletion = new CompletableFuture<>();
+
+        lanes.submit("thing", () -> {
+            started.add("first");
+            return firstCompletion;
+        });
+        lanes.submit("thing", () -> {
+            started.add("second");
+            return CompletableFuture.completedFuture(null);
+        });
+
+        Thread.sleep(100);
+        assertEquals(List.of("first"), started);
+
+        firstCompletion.complete(null);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertEquals(List.of("first", "second"), started);
+        assertEquals(0, lanes.queueLength(Math.floorMod("thing".hashCode(), 4)));
+    }
+
+    @Test
+    void queuedTasksFailOnceTheExecutorIsShutDown() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var lanes = new OrderedLaneExecutor(1, 10, executor);
+        CompletableFuture<Void> firstCompletion = new CompletableFuture<>();
+        List<String> started = new CopyOnWriteArrayList<>();
+
+        var first = lanes.submit("thing", () -> {
+            started.add("first");
+            return firstCompletion;
+        });
+        var second = lanes.submit("thing", () -> {
+            started.add("second");
+            return CompletableFuture.completedFuture(null);
+        });
+
+        Thread.sleep(100);
+        executor.shutdown();
+        firstCompletion.complete(null);
+
+        assertNull(first.join());
+        assertThrows(CompletionException.class, second::join);
+        assertEquals(List.of("first"), started);
+        assertEquals(0, lanes.queueLength(0));
+    }
+
+    @Test
+    void offerFailsInsteadOfBlockingOnAFullLane() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var lanes = new OrderedLaneExecutor(1, 1, executor);
+        CompletableFuture<Void> firstCompletion = new CompletableFuture<>();
+
+        lanes.submit("thing", () -> firstCompletion);
+        Thread.sleep(100);
+        var queued = lanes.offer("thing", () -> CompletableFuture.completedFuture(null));
+        var rejected = lanes.offer("thing", () -> CompletableFuture.completedFuture(null));
+
+        var error = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+
+        firstCompletion.complete(null);
+        assertNull(queued.join());
+        executor.shutdown();
+    }
+}
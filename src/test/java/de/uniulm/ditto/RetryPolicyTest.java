@@ -0,0 +1,61 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.base.model.exceptions.TooManyRequestsException;
+import org.eclipse.ditto.things.model.ThingId;
+import org.eclipse.ditto.things.model.signals.commands.exceptions.ThingNotAccessibleException;
+import org.eclipse.ditto.things.model.signals.commands.exceptions.ThingUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    private final ThingId thingId = ThingId.of("test:test");
+
+    @Test
+    void loadAndNetworkFailuresAreTransient() {
+        assertFalse(RetryPolicy.isPermanent(new TimeoutException("no response")));
+        assertFalse(RetryPolicy.isPermanent(new CompletionException(new IOException("connection reset"))));
+        assertFalse(RetryPolicy.isPermanent(TooManyRequestsException.newBuilder().build()));
+        assertFalse(RetryPolicy.isPermanent(new CompletionException(ThingUnavailableException.newBuilder(thingId).build())));
+    }
+
+    @Test
+    void failuresOfTheRecordArePermanent() {
+        assertTrue(RetryPolicy.isPermanent(new CompletionException(new InvalidValueException("not a number"))));
+        assertTrue(RetryPolicy.isPermanent(new NoSuchElementException("No value present")));
+        assertTrue(RetryPolicy.isPermanent(new NumberFormatException("For input string: \"abc\"")));
+        assertTrue(RetryPolicy.isPermanent(new CompletionException(ThingNotAccessibleException.newBuilder(thingId).build())));
+    }
+
+    @Test
+    void attemptsAreLimited() {
+        var policy = new RetryPolicy(3, 100, 1000);
+        var timeout = new TimeoutException("no response");
+
+        assertTrue(policy.retries(1, timeout));
+        assertTrue(policy.retries(2, timeout));
+        assertFalse(policy.retries(3, timeout));
+        assertFalse(policy.retries(1, new InvalidValueException("not a number")));
+    }
+
+    @Test
+    void backoffGrowsUpToTheMaximum() {
+        var policy = new RetryPolicy(10, 100, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            long first = policy.backoffMillis(1);
+            long third = policy.backoffMillis(3);
+            long tenth = policy.backoffMillis(10);
+
+            assertTrue(first >= 50 && first <= 100, "first backoff " + first);
+            assertTrue(third >= 200 && third <= 400, "third backoff " + third);
+            assertTrue(tenth >= 500 && tenth <= 1000, "tenth backoff " + tenth);
+        }
+    }
+}
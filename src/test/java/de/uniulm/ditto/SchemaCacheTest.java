@@ -0,0 +1,142 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.things.model.ThingId;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaCacheTest {
+
+    private final PropertyIdentifier identifier = new PropertyIdentifier(ThingId.of("test:test"), "feature1", "myValue");
+
+    @Test
+    void concurrentMissesShareOneLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<DataSchemaType> pendingLoad = new CompletableFuture<>();
+
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ofMinutes(1), id -> {
+            loads.incrementAndGet();
+            return pendingLoad;
+        }, (name, value) -> {
+        });
+
+        var first = cache.get(identifier);
+        var second = cache.get(identifier);
+        pendingLoad.complete(DataSchemaType.INTEGER);
+
+        assertEquals(1, loads.get());
+        assertEquals(DataSchemaType.INTEGER, first.join());
+        assertEquals(DataSchemaType.INTEGER, second.join());
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ofMinutes(1), id -> {
+            if (loads.incrementAndGet() == 1) {
+                return CompletableFuture.failedFuture(new IllegalStateException("not reachable"));
+            }
+            return CompletableFuture.completedFuture(DataSchemaType.NUMBER);
+        }, (name, value) -> {
+        });
+
+        assertTrue(cache.get(identifier).isCompletedExceptionally());
+        assertEquals(DataSchemaType.NUMBER, cache.get(identifier).join());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void expiredEntryIsLoadedAgain() {
+        AtomicInteger loads = new AtomicInteger();
+
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ZERO, id -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(DataSchemaType.STRING);
+        }, (name, value) -> {
+        });
+
+        cache.get(identifier).join();
+        cache.get(identifier).join();
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void sizeIsBounded() {
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ofMinutes(1),
+                id -> CompletableFuture.completedFuture(DataSchemaType.BOOLEAN), (name, value) -> {
+        });
+
+        for (int i = 0; i < 100; i++) {
+            cache.get(new PropertyIdentifier(ThingId.of("test:test"), "feature1", "value" + i)).join();
+        }
+
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    void restoredEntryIsServedAndRevalidatedOnFirstUse() {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<DataSchemaType> revalidation = new CompletableFuture<>();
+
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ofMinutes(1), id -> {
+            loads.incrementAndGet();
+            return revalidation;
+        }, (name, value) -> {
+        });
+
+        cache.restore(identifier, DataSchemaType.INTEGER);
+        assertEquals(0, loads.get());
+
+        assertEquals(DataSchemaType.INTEGER, cache.get(identifier).join());
+        assertEquals(DataSchemaType.INTEGER, cache.get(identifier).join());
+        assertEquals(1, loads.get());
+
+        revalidation.complete(DataSchemaType.NUMBER);
+        assertEquals(DataSchemaType.NUMBER, cache.get(identifier).join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void restoredEntryIsDroppedIfRevalidationFails() {
+        AtomicInteger loads = new AtomicInteger();
+
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ofMinutes(1), id -> {
+            if (loads.incrementAndGet() == 1) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Property removed"));
+            }
+            return CompletableFuture.completedFuture(DataSchemaType.STRING);
+        }, (name, value) -> {
+        });
+
+        cache.restore(identifier, DataSchemaType.INTEGER);
+
+        assertEquals(DataSchemaType.INTEGER, cache.get(identifier).join());
+        assertEquals(DataSchemaType.STRING, cache.get(identifier).join());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void snapshotContainsLoadedSchemas() {
+        var cache = new SchemaCache<DataSchemaType>(10, Duration.ofMinutes(1),
+                id -> id.getPropertyName().equals("broken")
+                        ? CompletableFuture.failedFuture(new IllegalStateException("No definition"))
+                        : CompletableFuture.completedFuture(DataSchemaType.BOOLEAN), (name, value) -> {
+        });
+        var broken = new PropertyIdentifier(ThingId.of("test:test"), "feature1", "broken");
+
+        long version = cache.version();
+        cache.get(identifier).join();
+        cache.get(broken);
+
+        assertEquals(Map.of(identifier, DataSchemaType.BOOLEAN), cache.snapshot());
+        assertNotEquals(version, cache.version());
+    }
+}
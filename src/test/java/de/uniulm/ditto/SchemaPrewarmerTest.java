@@ -0,0 +1,118 @@
+package de.uniulm.ditto;
+
+import de.uniulm.fake.FakeDittoServer;
+import org.eclipse.ditto.client.DittoClient;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.things.model.Thing;
+import org.eclipse.ditto.things.model.ThingId;
+import org.eclipse.ditto.things.model.ThingsModelFactory;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SchemaPrewarmerTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final SchemaCache<ValueConverter> cache = new SchemaCache<>(100, Duration.ofMinutes(1), id -> {
+        loads.incrementAndGet();
+        return CompletableFuture.failedFuture(new IllegalStateException("not prewarmed"));
+    }, (name, value) -> {
+    });
+
+    @Test
+    void propertiesOfTheDescriptionAreCached() throws Exception {
+        try (FakeDittoServer server = new FakeDittoServer(Path.of("src/test/resources/wot"))) {
+            var prewarmer = new SchemaPrewarmer(cache, 100);
+
+            prewarmer.prewarm(sensor("test:sensor", server)).join();
+
+            assertEquals(DataSchemaType.NUMBER, cache.get(property("test:sensor", "temperature")).join().getType());
+            assertEquals(DataSchemaType.BOOLEAN, cache.get(property("test:sensor", "open")).join().getType());
+            assertEquals(0, loads.get());
+            assertEquals(5, prewarmer.properties());
+            assertEquals(1, prewarmer.things());
+        }
+    }
+
+    @Test
+    void prewarmingStopsOnceTheLimitIsReached() throws Exception {
+        try (FakeDittoServer server = new FakeDittoServer(Path.of("src/test/resources/wot"))) {
+            var prewarmer = new SchemaPrewarmer(cache, 7);
+
+            prewarmer.prewarm(sensor("test:first", server)).join();
+            prewarmer.prewarm(sensor("test:second", server)).join();
+
+            assertEquals(7, prewarmer.properties());
+            assertEquals(7, cache.size());
+        }
+    }
+
+    @Test
+    void atMostConcurrencyThingsArePrewarmedAtATime() {
+        DittoClient client = mock(DittoClient.class, RETURNS_DEEP_STUBS);
+        when(client.twin().search().publisher(any())).thenReturn(subscriber -> subscriber.onSubscribe(new Subscription() {
+            private int delivered;
+
+            @Override
+            public void request(long n) {
+                // Two pages of 50 things, larger than the concurrency
+                if (delivered < 2) {
+                    int from = delivered++ * 50;
+                    subscriber.onNext(IntStream.range(from, from + 50)
+                            .mapToObj(i -> Thing.newBuilder().setId(ThingId.of("test:thing-" + i)).build())
+                            .toList());
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        }));
+
+        List<CompletableFuture<Void>> running = new CopyOnWriteArrayList<>();
+        var prewarmer = new SchemaPrewarmer(cache, 100) {
+            @Override
+            CompletableFuture<Void> prewarm(Thing thing) {
+                var future = new CompletableFuture<Void>();
+                running.add(future);
+                return future;
+            }
+        };
+
+        var done = prewarmer.start(client, "test", "", 4);
+        int peak = 0;
+
+        while (!done.isDone()) {
+            List<CompletableFuture<Void>> pending = running.stream().filter(future -> !future.isDone()).toList();
+            peak = Math.max(peak, pending.size());
+            pending.get(0).complete(null);
+        }
+
+        assertEquals(4, peak);
+        assertEquals(100, done.join().discovered());
+    }
+
+    // A feature described by the load sensor TD and a feature without definition
+    private static Thing sensor(String thingId, FakeDittoServer server) {
+        return ThingsModelFactory.newThing(JsonFactory.readFrom("{\"thingId\": \"" + thingId + "\", \"features\": {" +
+                "\"sensor\": {\"definition\": [\"" + server.descriptionUrl("load-sensor.jsonld") + "\"]}, " +
+                "\"status\": {\"properties\": {\"online\": true}}}}").asObject());
+    }
+
+    private static PropertyIdentifier property(String thingId, String name) {
+        return new PropertyIdentifier(ThingId.of(thingId), "sensor", name);
+    }
+}
@@ -0,0 +1,80 @@
+package de.uniulm.ditto;
+
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.things.model.ThingId;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+import org.eclipse.ditto.wot.model.Property;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SchemaSnapshotTest {
+
+    private final PropertyIdentifier co2 = new PropertyIdentifier(ThingId.of("test:test"), "air", "co2ppm");
+    private final PropertyIdentifier status = new PropertyIdentifier(ThingId.of("test:test"), "device", "status");
+
+    @Test
+    void convertersSurviveTheSnapshot() throws Exception {
+        Map<PropertyIdentifier, ValueConverter> schemas = Map.of(
+                co2, ValueConverters.forProperty(Property.fromJson("co2ppm",
+                        JsonObject.of("{\"type\": \"integer\", \"minimum\": 0, \"maximum\": 5000, \"title\": \"CO2\"}"))),
+                status, ValueConverters.forType(DataSchemaType.STRING));
+
+        Map<PropertyIdentifier, ValueConverter> restored = SchemaSnapshot.decode(SchemaSnapshot.encode(schemas));
+
+        assertEquals(schemas.keySet(), restored.keySet());
+        assertEquals(DataSchemaType.INTEGER, restored.get(co2).getType());
+        assertEquals(Optional.of(JsonValue.of(400)), restored.get(co2).convert("400"));
+        assertEquals(Optional.empty(), restored.get(co2).convert("6000"));
+        assertSame(ValueConverters.forType(DataSchemaType.STRING), restored.get(status));
+    }
+
+    @Test
+    void snapshotOfOtherVersionIsIgnored() throws Exception {
+        var compressed = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"version\": 99, \"entries\": [[\"test:test\", \"air\", \"co2ppm\", {\"type\": \"integer\"}]]}"
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertTrue(SchemaSnapshot.decode(compressed.toByteArray()).isEmpty());
+    }
+
+    @Test
+    void fileStoreKeepsTheLastSnapshot(@TempDir Path directory) throws Exception {
+        var store = SchemaSnapshot.fileStore(directory.resolve("snapshots").resolve("schema-snapshot-0"));
+
+        assertTrue(store.load().isEmpty());
+
+        store.save(new byte[]{1, 2});
+        store.save(new byte[]{3});
+
+        assertArrayEquals(new byte[]{3}, store.load().orElseThrow());
+    }
+
+    @Test
+    void fileModeRequiresADirectory(@TempDir Path directory) throws Exception {
+        var config = DittoSinkConfig.load(Map.of("schemaSnapshot", "FILE"));
+        var sinkContext = mock(SinkContext.class);
+
+        var error = assertThrows(IllegalArgumentException.class, () -> SchemaSnapshot.store(config, sinkContext));
+        assertTrue(error.getMessage().contains("schemaSnapshotDirectory"));
+
+        config.setSchemaSnapshotDirectory(" ");
+        assertThrows(IllegalArgumentException.class, () -> SchemaSnapshot.store(config, sinkContext));
+
+        config.setSchemaSnapshotDirectory(directory.toString());
+        assertNotNull(SchemaSnapshot.store(config, sinkContext));
+    }
+}
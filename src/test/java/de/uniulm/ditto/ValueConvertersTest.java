@@ -0,0 +1,53 @@
+package de.uniulm.ditto;
+
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.eclipse.ditto.wot.model.DataSchemaType;
+import org.eclipse.ditto.wot.model.Property;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueConvertersTest {
+
+    @Test
+    void convertsValidInput() {
+        assertEquals(Optional.of(JsonValue.of(true)), ValueConverters.forType(DataSchemaType.BOOLEAN).convert("true"));
+        assertEquals(Optional.of(JsonValue.of(-12)), ValueConverters.forType(DataSchemaType.INTEGER).convert("-12"));
+        assertEquals(Optional.of(JsonValue.of(1013.25)), ValueConverters.forType(DataSchemaType.NUMBER).convert("1013.25"));
+        assertEquals(Optional.of(JsonValue.of("anyValue")), ValueConverters.forType(DataSchemaType.STRING).convert("anyValue"));
+        assertTrue(ValueConverters.forType(DataSchemaType.OBJECT).convert("{\"a\": 1}").orElseThrow().isObject());
+    }
+
+    @Test
+    void rejectsInvalidInputWithoutException() {
+        assertTrue(ValueConverters.forType(DataSchemaType.BOOLEAN).convert("yes").isEmpty());
+        assertTrue(ValueConverters.forType(DataSchemaType.INTEGER).convert("12.5").isEmpty());
+        assertTrue(ValueConverters.forType(DataSchemaType.INTEGER).convert("99999999999999999999").isEmpty());
+        assertTrue(ValueConverters.forType(DataSchemaType.NUMBER).convert("1.").isEmpty());
+        assertTrue(ValueConverters.forType(DataSchemaType.NUMBER).convert(null).isEmpty());
+        assertTrue(ValueConverters.forType(DataSchemaType.ARRAY).convert("{\"a\": 1}").isEmpty());
+    }
+
+    @Test
+    void appliesConstraintsOfProperty() {
+        Property property = Property.fromJson("co2ppm", JsonObject.of("{\"type\": \"integer\", \"minimum\": 0, \"maximum\": 5000}"));
+        ValueConverter converter = ValueConverters.forProperty(property);
+
+        assertEquals(DataSchemaType.INTEGER, converter.getType());
+        assertTrue(converter.convert("400").isPresent());
+        assertTrue(converter.convert("-1").isEmpty());
+        assertTrue(converter.convert("5001").isEmpty());
+    }
+
+    @Test
+    void appliesEnumOfProperty() {
+        Property property = Property.fromJson("status", JsonObject.of("{\"type\": \"string\", \"enum\": [\"ok\", \"error\"]}"));
+        ValueConverter converter = ValueConverters.forProperty(property);
+
+        assertTrue(converter.convert("ok").isPresent());
+        assertTrue(converter.convert("unknown").isEmpty());
+    }
+}
@@ -0,0 +1,563 @@
+package de.uniulm.fake;
+
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonField;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonObjectBuilder;
+import org.eclipse.ditto.json.JsonPointer;
+import org.eclipse.ditto.json.JsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process stand-in for the /ws/2 endpoint of Ditto, for tests and load tests without the docker compose stack.
+//
+// It speaks the part of the Ditto Protocol the sink and the event management use: twin retrieve (with field selection),
+// create, modify, merge and delete commands, the START-SEND-EVENTS subscription and the twin events of changed things.
+// Responses can be delayed and failed at a configurable rate. Plain HTTP GET requests for /wot/<file> are served from a
+// directory, so things can point their definition to ThingDescriptions of this server.
+public class FakeDittoServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeDittoServer.class);
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private final Map<String, JsonObject> things = new ConcurrentHashMap<>();
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicLong revision = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final Path descriptions;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionThreads = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "fake-ditto-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService responder = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "fake-ditto-responder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile long latencyMicros;
+    private volatile long jitterMicros;
+    private volatile double errorRate;
+
+    public FakeDittoServer(Path descriptions) throws IOException {
+        this.descriptions = descriptions.toAbsolutePath().normalize();
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "fake-ditto-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    // Every response is delayed by the latency plus a uniformly distributed share of the jitter
+    public FakeDittoServer latency(Duration latency, Duration jitter) {
+        this.latencyMicros = TimeUnit.NANOSECONDS.toMicros(latency.toNanos());
+        this.jitterMicros = TimeUnit.NANOSECONDS.toMicros(jitter.toNanos());
+        return this;
+    }
+
+    // Share of the commands (0-1) that are answered with a 503 error instead of being applied
+    public FakeDittoServer errorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String endpoint() {
+        return "ws://localhost:" + port() + "/ws/2";
+    }
+
+    public String descriptionUrl(String file) {
+        return "http://localhost:" + port() + "/wot/" + file;
+    }
+
+    public long commandCount() {
+        return commands.get();
+    }
+
+    public JsonObject thing(String thingId) {
+        return things.get(thingId);
+    }
+
+    // Creates or replaces a thing and publishes the matching event, like a change made through another client
+    public void putThing(String thingId, JsonObject thing) {
+        JsonObject withId = thing.setValue("thingId", thingId);
+        boolean created = things.put(thingId, withId) == null;
+        publishEvent(thingId, created ? "created" : "modified", JsonPointer.empty(), withId);
+    }
+
+    public void deleteThing(String thingId) {
+        if (things.remove(thingId) != null) {
+            publishEvent(thingId, "deleted", JsonPointer.empty(), null);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.forEach(Connection::close);
+        connectionThreads.shutdownNow();
+        responder.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connectionThreads.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.warn("Could not accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            String requestLine = readLine(in);
+            Map<String, String> headers = new HashMap<>();
+
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+
+            String path = requestLine.split(" ")[1];
+
+            if ("websocket".equalsIgnoreCase(headers.get("upgrade")) && path.startsWith("/ws/2")) {
+                upgrade(socket, in, out, headers.get("sec-websocket-key"));
+            } else if (requestLine.startsWith("GET ") && path.startsWith("/wot/")) {
+                serveDescription(out, path.substring("/wot/".length()));
+            } else {
+                writeHttp(out, "404 Not Found", "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            logger.debug("Connection closed", e);
+        }
+    }
+
+    private void serveDescription(OutputStream out, String file) throws IOException {
+        Path description = descriptions.resolve(file).normalize();
+
+        if (!description.startsWith(descriptions) || !Files.isRegularFile(description)) {
+            writeHttp(out, "404 Not Found", "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        writeHttp(out, "200 OK", "application/td+json", Files.readAllBytes(description));
+    }
+
+    private static void writeHttp(OutputStream out, String status, String contentType, byte[] body) throws IOException {
+        out.write(("HTTP/1.1 " + status + "\r\nContent-Type: " + contentType + "\r\nContent-Length: " + body.length
+                + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+
+    private void upgrade(Socket socket, InputStream in, OutputStream out, String key) throws IOException {
+        out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        Connection connection = new Connection(socket, new BufferedOutputStream(out));
+        connections.add(connection);
+
+        try {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+
+            while (true) {
+                int first = readByte(in);
+                int second = readByte(in);
+                boolean fin = (first & 0x80) != 0;
+                int opcode = first & 0x0F;
+                long length = second & 0x7F;
+
+                if (length == 126) {
+                    length = (readByte(in) << 8) | readByte(in);
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte(in);
+                    }
+                }
+
+                byte[] mask = (second & 0x80) != 0 ? in.readNBytes(4) : null;
+                byte[] payload = in.readNBytes((int) length);
+
+                if (payload.length != length) {
+                    throw new EOFException();
+                }
+                if (mask != null) {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i % 4];
+                    }
+                }
+
+                switch (opcode) {
+                    case 0x0, 0x1 -> {
+                        message.write(payload);
+                        if (fin) {
+                            String text = message.toString(StandardCharsets.UTF_8);
+                            message.reset();
+                            onMessage(connection, text);
+                        }
+                    }
+                    case 0x8 -> {
+                        connection.send(0x8, payload);
+                        return;
+                    }
+                    case 0x9 -> connection.send(0xA, payload);
+                    default -> {
+                        // Pongs and binary frames are not used by the Ditto client
+                    }
+                }
+            }
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private void onMessage(Connection connection, String text) {
+        if (text.startsWith("START-SEND-") || text.startsWith("STOP-SEND-")) {
+            String protocolMessage = text.split("[?:]")[0];
+
+            if (protocolMessage.equals("START-SEND-EVENTS")) {
+                connection.events = true;
+            } else if (protocolMessage.equals("STOP-SEND-EVENTS")) {
+                connection.events = false;
+            }
+            connection.sendText(protocolMessage + ":ACK");
+            return;
+        }
+
+        JsonObject command;
+
+        try {
+            command = JsonFactory.readFrom(text).asObject();
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring message that is not a Ditto Protocol command: {}", text);
+            return;
+        }
+
+        commands.incrementAndGet();
+        long delay = latencyMicros + (jitterMicros > 0 ? ThreadLocalRandom.current().nextLong(jitterMicros) : 0);
+        responder.schedule(() -> respond(connection, command), delay, TimeUnit.MICROSECONDS);
+    }
+
+    private void respond(Connection connection, JsonObject command) {
+        String topic = command.getValue("topic").map(JsonValue::asString).orElse("");
+        JsonObject headers = command.getValue("headers").filter(JsonValue::isObject).map(JsonValue::asObject)
+                .orElse(JsonObject.empty());
+        JsonPointer path = JsonPointer.of(command.getValue("path").map(JsonValue::asString).orElse("/"));
+        JsonValue value = command.getValue("value").orElse(null);
+        String[] topicParts = topic.split("/");
+
+        if (topicParts.length < 6 || !"things".equals(topicParts[2]) || !"commands".equals(topicParts[4])) {
+            logger.debug("Ignoring unsupported command {}", topic);
+            return;
+        }
+
+        String thingId = topicParts[0] + ":" + topicParts[1];
+        String action = topicParts[5];
+
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            connection.sendText(error(thingId, headers, 503, "things:thing.unavailable",
+                    "The Thing is temporarily not available (injected error).").toString());
+            return;
+        }
+
+        JsonObject response = switch (action) {
+            case "retrieve" -> retrieve(thingId, topic, headers, path, command.getValue("fields").map(JsonValue::asString).orElse(null));
+            case "create", "modify" -> modify(thingId, topic, headers, path, value);
+            case "merge" -> merge(thingId, topic, headers, path, value);
+            case "delete" -> delete(thingId, topic, headers, path);
+            default -> error(thingId, headers, 400, "things:command.unsupported", "Unsupported command " + action);
+        };
+
+        // Commands with response-required=false are not answered, like in Ditto
+        if (headers.getValue("response-required").map(JsonValue::asBoolean).orElse(true)) {
+            connection.sendText(response.toString());
+        }
+    }
+
+    private JsonObject retrieve(String thingId, String topic, JsonObject headers, JsonPointer path, String fields) {
+        JsonObject thing = things.get(thingId);
+        JsonValue value = thing == null ? null : path.isEmpty() ? thing : thing.getValue(path).orElse(null);
+
+        if (value == null) {
+            return notFound(thingId, headers, path);
+        }
+        if (fields != null && value.isObject()) {
+            value = select(value.asObject(), fields);
+        }
+        return response(topic, headers, path, value, 200);
+    }
+
+    // Field selection like Ditto, including the features/*/... wildcard
+    private static JsonObject select(JsonObject value, String fields) {
+        JsonObject selected = JsonObject.empty();
+
+        for (String field : fields.split(",")) {
+            String trimmed = field.trim();
+
+            if (trimmed.startsWith("features/*/")) {
+                JsonObject features = value.getValue("features").filter(JsonValue::isObject).map(JsonValue::asObject)
+                        .orElse(JsonObject.empty());
+
+                for (JsonField feature : features) {
+                    JsonPointer pointer = JsonPointer.of("features/" + feature.getKeyName() + trimmed.substring("features/*".length()));
+                    JsonObject current = selected;
+                    selected = value.getValue(pointer).map(v -> current.setValue(pointer, v)).orElse(current);
+                }
+            } else {
+                JsonPointer pointer = JsonPointer.of(trimmed);
+                JsonObject current = selected;
+                selected = value.getValue(pointer).map(v -> current.setValue(pointer, v)).orElse(current);
+            }
+        }
+        return selected;
+    }
+
+    private JsonObject modify(String thingId, String topic, JsonObject headers, JsonPointer path, JsonValue value) {
+        if (value == null) {
+            return error(thingId, headers, 400, "json.invalid", "The command has no value");
+        }
+
+        boolean[] created = new boolean[1];
+
+        JsonObject thing = things.compute(thingId, (id, current) -> {
+            if (current == null && !path.isEmpty()) {
+                return null;
+            }
+            created[0] = current == null || current.getValue(path).isEmpty();
+            return path.isEmpty() ? value.asObject().setValue("thingId", thingId) : current.setValue(path, value);
+        });
+
+        if (thing == null) {
+            return notFound(thingId, headers, path);
+        }
+
+        publishEvent(thingId, created[0] ? "created" : "modified", path, value);
+        return created[0] ? response(topic, headers, path, value, 201) : response(topic, headers, path, null, 204);
+    }
+
+    private JsonObject merge(String thingId, String topic, JsonObject headers, JsonPointer path, JsonValue patch) {
+        JsonObject thing = things.computeIfPresent(thingId, (id, current) -> {
+            JsonValue merged = mergePatch(current.getValue(path).orElse(null), patch);
+            return path.isEmpty() ? merged.asObject() : current.setValue(path, merged);
+        });
+
+        if (thing == null) {
+            return notFound(thingId, headers, path);
+        }
+
+        publishEvent(thingId, "merged", path, patch);
+        return response(topic, headers, path, null, 204);
+    }
+
+    private JsonObject delete(String thingId, String topic, JsonObject headers, JsonPointer path) {
+        JsonObject thing = path.isEmpty()
+                ? things.remove(thingId)
+                : things.computeIfPresent(thingId, (id, current) -> current.remove(path));
+
+        if (thing == null) {
+            return notFound(thingId, headers, path);
+        }
+
+        publishEvent(thingId, "deleted", path, null);
+        return response(topic, headers, path, null, 204);
+    }
+
+    // JSON merge patch (RFC 7396): null removes a field, objects are merged recursively, everything else replaces
+    static JsonValue mergePatch(JsonValue target, JsonValue patch) {
+        if (patch == null || !patch.isObject()) {
+            return patch;
+        }
+
+        JsonObject result = target != null && target.isObject() ? target.asObject() : JsonObject.empty();
+
+        for (JsonField field : patch.asObject()) {
+            if (field.getValue().isNull()) {
+                result = result.remove(field.getKey());
+            } else {
+                result = result.setValue(field.getKey(), mergePatch(result.getValue(field.getKey()).orElse(null), field.getValue()));
+            }
+        }
+        return result;
+    }
+
+    private void publishEvent(String thingId, String action, JsonPointer path, JsonValue value) {
+        String[] id = thingId.split(":", 2);
+        JsonObjectBuilder event = JsonFactory.newObjectBuilder()
+                .set("topic", id[0] + "/" + id[1] + "/things/twin/events/" + action)
+                .set("headers", JsonFactory.newObjectBuilder().set("content-type", "application/json").build())
+                .set("path", path.isEmpty() ? "/" : path.toString())
+                .set("revision", revision.incrementAndGet());
+
+        if (value != null) {
+            event.set("value", value);
+        }
+
+        String text = event.build().toString();
+
+        for (Connection connection : connections) {
+            if (connection.events) {
+                connection.sendText(text);
+            }
+        }
+    }
+
+    private static JsonObject response(String topic, JsonObject headers, JsonPointer path, JsonValue value, int status) {
+        JsonObjectBuilder response = JsonFactory.newObjectBuilder()
+                .set("topic", topic)
+                .set("headers", responseHeaders(headers))
+                .set("path", path.isEmpty() ? "/" : path.toString())
+                .set("status", status);
+
+        if (value != null) {
+            response.set("value", value);
+        }
+        return response.build();
+    }
+
+    private static JsonObject notFound(String thingId, JsonObject headers, JsonPointer path) {
+        return error(thingId, headers, 404, "things:thing.notfound",
+                "The Thing with ID '" + thingId + "' or its path '" + path + "' could not be found.");
+    }
+
+    private static JsonObject error(String thingId, JsonObject headers, int status, String code, String message) {
+        String[] id = thingId.split(":", 2);
+
+        return JsonFactory.newObjectBuilder()
+                .set("topic", id[0] + "/" + id[1] + "/things/twin/errors")
+                .set("headers", responseHeaders(headers))
+                .set("path", "/")
+                .set("value", JsonFactory.newObjectBuilder()
+                        .set("status", status)
+                        .set("error", code)
+                        .set("message", message)
+                        .build())
+                .set("status", status)
+                .build();
+    }
+
+    private static JsonObject responseHeaders(JsonObject headers) {
+        JsonObjectBuilder responseHeaders = JsonFactory.newObjectBuilder().set("content-type", "application/json");
+        headers.getValue("correlation-id").ifPresent(id -> responseHeaders.set("correlation-id", id));
+        return responseHeaders.set("response-required", false).build();
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        for (int c = readByte(in); c != '\n'; c = readByte(in)) {
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private volatile boolean events;
+
+        private Connection(Socket socket, OutputStream out) {
+            this.socket = socket;
+            this.out = out;
+        }
+
+        private void sendText(String text) {
+            send(0x1, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Server frames are not masked
+        private synchronized void send(int opcode, byte[] payload) {
+            try {
+                out.write(0x80 | opcode);
+
+                if (payload.length < 126) {
+                    out.write(payload.length);
+                } else if (payload.length <= 0xFFFF) {
+                    out.write(126);
+                    out.write(payload.length >>> 8);
+                    out.write(payload.length);
+                } else {
+                    out.write(127);
+                    for (int i = 7; i >= 0; i--) {
+                        out.write((int) ((long) payload.length >>> (8 * i)));
+                    }
+                }
+
+                out.write(payload);
+                out.flush();
+            } catch (IOException e) {
+                logger.debug("Could not send to closed connection", e);
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Could not close connection", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package de.uniulm.fake;
+
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObject;
+import org.eclipse.ditto.json.JsonValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FakeDittoServerTest {
+
+    private FakeDittoServer server;
+    private WebSocket webSocket;
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeDittoServer(Path.of("src/test/resources/wot"));
+        server.putThing("test:thing", JsonFactory.readFrom(
+                "{\"features\": {\"sensor\": {\"properties\": {\"temperature\": 20}}}}").asObject());
+
+        webSocket = HttpClient.newHttpClient().newWebSocketBuilder()
+                .buildAsync(URI.create(server.endpoint()), new WebSocket.Listener() {
+                    private final StringBuilder message = new StringBuilder();
+
+                    @Override
+                    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                        message.append(data);
+                        if (last) {
+                            received.add(message.toString());
+                            message.setLength(0);
+                        }
+                        webSocket.request(1);
+                        return null;
+                    }
+                })
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        webSocket.abort();
+        server.close();
+    }
+
+    @Test
+    void modifiedPropertyCanBeRetrieved() throws Exception {
+        JsonObject modified = send("{\"topic\": \"test/thing/things/twin/commands/modify\", \"headers\": {\"correlation-id\": \"1\"}, " +
+                "\"path\": \"/features/sensor/properties/temperature\", \"value\": 21.5}");
+
+        assertEquals(204, modified.getValue("status").map(JsonValue::asInt).orElseThrow());
+        assertEquals("1", modified.getValue("headers/correlation-id").map(JsonValue::asString).orElseThrow());
+
+        JsonObject retrieved = send("{\"topic\": \"test/thing/things/twin/commands/retrieve\", \"headers\": {\"correlation-id\": \"2\"}, " +
+                "\"path\": \"/features/sensor\"}");
+
+        assertEquals(200, retrieved.getValue("status").map(JsonValue::asInt).orElseThrow());
+        assertEquals(JsonValue.of(21.5), retrieved.getValue("value/properties/temperature").orElseThrow());
+    }
+
+    @Test
+    void mergeKeepsOtherProperties() throws Exception {
+        send("{\"topic\": \"test/thing/things/twin/commands/merge\", \"headers\": {\"correlation-id\": \"1\"}, " +
+                "\"path\": \"/features/sensor/properties\", \"value\": {\"humidity\": 40}}");
+
+        JsonObject thing = server.thing("test:thing");
+
+        assertEquals(JsonValue.of(20), thing.getValue("features/sensor/properties/temperature").orElseThrow());
+        assertEquals(JsonValue.of(40), thing.getValue("features/sensor/properties/humidity").orElseThrow());
+    }
+
+    @Test
+    void retrieveSelectsFields() throws Exception {
+        server.putThing("test:selected", JsonFactory.readFrom("{\"definition\": \"https://example.com/sensor.jsonld\", " +
+                "\"attributes\": {\"location\": \"ulm\"}, \"features\": {\"sensor\": {\"definition\": [\"a:b:1\"], " +
+                "\"properties\": {\"temperature\": 20}}}}").asObject());
+
+        JsonObject response = send("{\"topic\": \"test/selected/things/twin/commands/retrieve\", \"headers\": {\"correlation-id\": \"1\"}, " +
+                "\"path\": \"/\", \"fields\": \"definition,features/*/properties\"}");
+
+        assertEquals(JsonFactory.readFrom("{\"definition\": \"https://example.com/sensor.jsonld\", " +
+                "\"features\": {\"sensor\": {\"properties\": {\"temperature\": 20}}}}"), response.getValue("value").orElseThrow());
+    }
+
+    @Test
+    void unknownThingIsNotFound() throws Exception {
+        JsonObject response = send("{\"topic\": \"test/unknown/things/twin/commands/retrieve\", \"headers\": {\"correlation-id\": \"1\"}, \"path\": \"/\"}");
+
+        assertEquals(404, response.getValue("status").map(JsonValue::asInt).orElseThrow());
+        assertEquals("test/unknown/things/twin/errors", response.getValue("topic").map(JsonValue::asString).orElseThrow());
+    }
+
+    @Test
+    void errorsCanBeInjected() throws Exception {
+        server.errorRate(1);
+
+        JsonObject response = send("{\"topic\": \"test/thing/things/twin/commands/retrieve\", \"headers\": {\"correlation-id\": \"1\"}, \"path\": \"/\"}");
+
+        assertEquals(503, response.getValue("status").map(JsonValue::asInt).orElseThrow());
+    }
+
+    @Test
+    void subscribedConnectionsReceiveEvents() throws Exception {
+        webSocket.sendText("START-SEND-EVENTS", true).get(5, TimeUnit.SECONDS);
+        assertEquals("START-SEND-EVENTS:ACK", received.poll(5, TimeUnit.SECONDS));
+
+        server.putThing("test:other", JsonObject.empty());
+
+        JsonObject event = JsonFactory.readFrom(received.poll(5, TimeUnit.SECONDS)).asObject();
+        assertEquals("test/other/things/twin/events/created", event.getValue("topic").map(JsonValue::asString).orElseThrow());
+    }
+
+    @Test
+    void descriptionsAreServedOverHttp() throws Exception {
+        HttpResponse<String> response = HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(server.descriptionUrl("load-sensor.jsonld"))).build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"temperature\""));
+    }
+
+    private JsonObject send(String command) throws Exception {
+        webSocket.sendText(command, true).get(5, TimeUnit.SECONDS);
+        String response = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(response, "No response within 5 seconds");
+        return JsonFactory.readFrom(response).asObject();
+    }
+}
@@ -0,0 +1,247 @@
+package de.uniulm.fake;
+
+import de.uniulm.Stubs;
+import de.uniulm.ditto.DittoSink;
+import de.uniulm.processor.ByteToJsonProcessor;
+import de.uniulm.util.LatencyHistogram;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.functions.api.Context;
+import org.apache.pulsar.functions.api.Record;
+import org.apache.pulsar.io.core.SinkContext;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Pushes synthetic sensor messages through ByteToJsonProcessor and DittoSink against a FakeDittoServer and reports the
+// throughput and the latency from processing a message until all of its updates are acknowledged.
+//
+// The outputs of the processor are handed to the sink in-process, there is no broker in between. Run with
+// mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=de.uniulm.fake.LoadDriver -Dexec.args="..."
+public class LoadDriver {
+
+    private static final String[] FIELDS = {"temperature", "humidity", "count", "state", "open"};
+
+    public record Options(int records, int things, int concurrency, Duration latency, Duration jitter, double errorRate,
+                          Map<String, Object> sinkConfig) {
+
+        public static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                values.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+            }
+
+            Map<String, Object> sinkConfig = new HashMap<>();
+            values.forEach((key, value) -> {
+                if (key.startsWith("sink.")) {
+                    sinkConfig.put(key.substring("sink.".length()), value);
+                }
+            });
+
+            return new Options(
+                    Integer.parseInt(values.getOrDefault("records", "100000")),
+                    Integer.parseInt(values.getOrDefault("things", "100")),
+                    Integer.parseInt(values.getOrDefault("concurrency", "1000")),
+                    Duration.ofMillis(Long.parseLong(values.getOrDefault("latency-ms", "5"))),
+                    Duration.ofMillis(Long.parseLong(values.getOrDefault("jitter-ms", "5"))),
+                    Double.parseDouble(values.getOrDefault("error-rate", "0")),
+                    sinkConfig);
+        }
+    }
+
+    public record Result(long records, long failed, double recordsPerSecond, double p50Millis, double p99Millis,
+                         double maxMillis, long dittoCommands) {
+
+        @Override
+        public String toString() {
+            return String.format("records: %d, failed: %d, throughput: %.0f records/s, latency p50: %.2f ms, " +
+                            "p99: %.2f ms, max: %.2f ms, Ditto commands: %d",
+                    records, failed, recordsPerSecond, p50Millis, p99Millis, maxMillis, dittoCommands);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(run(Options.parse(args)));
+    }
+
+    public static Result run(Options options) throws Exception {
+        try (FakeDittoServer server = new FakeDittoServer(Path.of("src/test/resources/wot"))) {
+            server.latency(options.latency(), options.jitter()).errorRate(options.errorRate());
+
+            String mapping = createThings(server, options.things());
+
+            Map<String, Object> sinkConfig = new HashMap<>(options.sinkConfig());
+            sinkConfig.put("dittoUsername", "ditto");
+            sinkConfig.put("dittoPassword", "ditto");
+            sinkConfig.put("websocketEndpoint", server.endpoint());
+
+            DittoSink sink = new DittoSink();
+            sink.open(sinkConfig, Stubs.stub(SinkContext.class, Map.of()));
+
+            ByteToJsonProcessor processor = new ByteToJsonProcessor();
+            LatencyHistogram latency = new LatencyHistogram();
+            Semaphore window = new Semaphore(options.concurrency());
+            AtomicLong failed = new AtomicLong();
+
+            try {
+                long start = System.nanoTime();
+
+                for (int i = 0; i < options.records(); i++) {
+                    window.acquire();
+
+                    String thingId = "load:thing-" + (i % options.things());
+                    long recordStart = System.nanoTime();
+
+                    Consumer<Boolean> done = error -> {
+                        latency.recordNanos(System.nanoTime() - recordStart);
+                        if (error) {
+                            failed.incrementAndGet();
+                        }
+                        window.release();
+                    };
+
+                    try {
+                        processor.process(payload(i), loopbackContext(sink, thingId, mapping, done));
+                    } catch (Exception e) {
+                        done.accept(true);
+                    }
+                }
+
+                // Wait for the last records
+                window.acquire(options.concurrency());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                LatencyHistogram.Snapshot snapshot = latency.snapshotAndReset();
+
+                return new Result(options.records(), failed.get(), options.records() / seconds,
+                        snapshot.percentileMillis(50), snapshot.percentileMillis(99), snapshot.maxMillis(),
+                        server.commandCount());
+            } finally {
+                processor.close();
+                sink.close();
+            }
+        }
+    }
+
+    private static String createThings(FakeDittoServer server, int things) {
+        JsonObject thing = JsonFactory.readFrom("{\"features\": {\"sensor\": {\"definition\": [\""
+                + server.descriptionUrl("load-sensor.jsonld") + "\"], \"properties\": {}}}}").asObject();
+
+        for (int i = 0; i < things; i++) {
+            server.putThing("load:thing-" + i, thing);
+        }
+
+        StringBuilder mapping = new StringBuilder();
+        for (String field : FIELDS) {
+            mapping.append(field).append("=sensor;");
+        }
+        return mapping.toString();
+    }
+
+    private static byte[] payload(int i) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        return ("{\"temperature\": " + Math.round(random.nextDouble(-20, 40) * 10) / 10.0
+                + ", \"humidity\": " + random.nextInt(0, 100)
+                + ", \"count\": " + i
+                + ", \"state\": \"" + (i % 2 == 0 ? "idle" : "running") + "\""
+                + ", \"open\": " + random.nextBoolean() + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Function context whose string outputs are written to the sink. The send of an output completes once the sink
+    // acknowledged or failed its record, the input record reports once all of its outputs completed.
+    private static Context loopbackContext(DittoSink sink, String thingId, String mapping, Consumer<Boolean> done) {
+        Map<String, String> properties = Map.of("thingId", thingId, "propertyFeatureMapping", mapping);
+        Optional<Long> eventTime = Optional.of(System.currentTimeMillis());
+        CompletableFuture<MessageId> sent = CompletableFuture.completedFuture(MessageId.latest);
+
+        Record<?> input = Stubs.stub(Record.class, Map.of(
+                "getProperties", args -> properties,
+                "getEventTime", args -> eventTime,
+                "ack", args -> {
+                    done.accept(false);
+                    return null;
+                },
+                "fail", args -> {
+                    done.accept(true);
+                    return null;
+                }));
+
+        return Stubs.stub(Context.class, Map.of(
+                "getCurrentRecord", args -> input,
+                "getOutputTopic", args -> "ditto-sink",
+                "getUserConfigValueOrDefault", args -> args[1],
+                "newOutputMessage", args -> "ditto-sink".equals(args[0]) ? loopbackMessage(sink) : discardedMessage(sent)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypedMessageBuilder<?> loopbackMessage(DittoSink sink) {
+        Object[] value = new Object[1];
+        Map<String, String> messageProperties = new HashMap<>();
+
+        return Stubs.stub(TypedMessageBuilder.class, Map.of(
+                "value", args -> {
+                    value[0] = args[0];
+                    return null;
+                },
+                "properties", args -> {
+                    messageProperties.putAll((Map<String, String>) args[0]);
+                    return null;
+                },
+                "sendAsync", args -> {
+                    LoopbackRecord record = new LoopbackRecord((String) value[0], messageProperties);
+                    try {
+                        sink.write(record);
+                    } catch (Exception e) {
+                        record.completion.completeExceptionally(e);
+                    }
+                    return record.completion;
+                }));
+    }
+
+    private static TypedMessageBuilder<?> discardedMessage(CompletableFuture<MessageId> sent) {
+        return Stubs.stub(TypedMessageBuilder.class, Map.of("sendAsync", args -> sent));
+    }
+
+    private static class LoopbackRecord implements Record<String> {
+        private final String value;
+        private final Map<String, String> properties;
+        private final CompletableFuture<MessageId> completion = new CompletableFuture<>();
+
+        private LoopbackRecord(String value, Map<String, String> properties) {
+            this.value = value;
+            this.properties = properties;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        @Override
+        public void ack() {
+            completion.complete(MessageId.latest);
+        }
+
+        @Override
+        public void fail() {
+            completion.completeExceptionally(new IllegalStateException("Sink failed the record"));
+        }
+    }
+}
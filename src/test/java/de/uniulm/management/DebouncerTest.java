@@ -0,0 +1,143 @@
+package de.uniulm.management;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DebouncerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> runs = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void burstResultsInOneRun() throws Exception {
+        var debouncer = new Debouncer<String>(scheduler, Duration.ofMillis(50), Duration.ofSeconds(5), key -> {
+            runs.add(key);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        for (int i = 0; i < 10; i++) {
+            debouncer.submit("ns:thing");
+        }
+        debouncer.submit("ns:other");
+
+        awaitIdle(debouncer);
+        assertEquals(1, runs.stream().filter("ns:thing"::equals).count());
+        assertEquals(1, runs.stream().filter("ns:other"::equals).count());
+    }
+
+    @Test
+    void submitDuringRunRunsOnceMoreAfterIt() throws Exception {
+        var running = new CompletableFuture<Void>();
+        var debouncer = new Debouncer<String>(scheduler, Duration.ofMillis(10), Duration.ofSeconds(5), key -> {
+            runs.add(key);
+            return runs.size() == 1 ? running : CompletableFuture.completedFuture(null);
+        });
+
+        debouncer.submit("ns:thing");
+        while (runs.isEmpty()) {
+            Thread.sleep(5);
+        }
+
+        debouncer.submit("ns:thing");
+        debouncer.submit("ns:thing");
+        Thread.sleep(50);
+        // No overlapping run while the first one is in progress
+        assertEquals(1, runs.size());
+
+        running.complete(null);
+        awaitIdle(debouncer);
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void keyThatKeepsChangingRunsAfterTheMaxWait() throws Exception {
+        var debouncer = new Debouncer<String>(scheduler, Duration.ofMillis(50), Duration.ofMillis(200), key -> {
+            runs.add(key);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // A submit every 10 ms would postpone a trailing-only debounce forever
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(600);
+        while (System.nanoTime() < deadline) {
+            debouncer.submit("ns:thing");
+            Thread.sleep(10);
+        }
+
+        assertTrue(runs.size() >= 2, "runs " + runs.size());
+    }
+
+    @Test
+    void submitNowWaitsForTheRunInProgress() throws Exception {
+        var running = new CompletableFuture<Void>();
+        var debouncer = new Debouncer<String>(scheduler, Duration.ofSeconds(5), Duration.ofSeconds(5), key -> {
+            runs.add(key);
+            return runs.size() == 1 ? running : CompletableFuture.completedFuture(null);
+        });
+
+        var first = debouncer.submitNow("ns:thing");
+        while (runs.isEmpty()) {
+            Thread.sleep(5);
+        }
+
+        var second = debouncer.submitNow("ns:thing");
+        Thread.sleep(50);
+        assertEquals(1, runs.size());
+        assertFalse(second.isDone());
+
+        running.complete(null);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2, runs.size());
+    }
+
+    @Test
+    void submitsFailOnceTheSchedulerIsShutDown() throws Exception {
+        var running = new CompletableFuture<Void>();
+        var debouncer = new Debouncer<String>(scheduler, Duration.ofMillis(10), Duration.ofSeconds(5), key -> {
+            runs.add(key);
+            return running;
+        });
+
+        var first = debouncer.submitNow("ns:thing");
+        while (runs.isEmpty()) {
+            Thread.sleep(5);
+        }
+        var second = debouncer.submit("ns:thing");
+        scheduler.shutdownNow();
+
+        // The run in progress completes its submits, the next run can no longer be scheduled
+        running.complete(null);
+        first.get(5, TimeUnit.SECONDS);
+        var error = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+
+        assertThrows(ExecutionException.class, () -> debouncer.submit("ns:other").get(5, TimeUnit.SECONDS));
+        assertEquals(0, debouncer.pending());
+    }
+
+    private static void awaitIdle(Debouncer<?> debouncer) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (debouncer.pending() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, debouncer.pending());
+    }
+}
@@ -1,14 +1,32 @@
 package de.uniulm.management;
 
+import de.uniulm.fake.FakeDittoServer;
+import org.apache.pulsar.client.admin.PulsarAdmin;
+import org.apache.pulsar.client.admin.Sources;
+import org.apache.pulsar.common.io.SourceConfig;
 import org.apache.pulsar.functions.api.Context;
+import org.eclipse.ditto.client.changes.ChangeAction;
+import org.eclipse.ditto.json.JsonFactory;
+import org.eclipse.ditto.json.JsonPointer;
 import org.junit.jupiter.api.Test;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class DittoEventManagementTest {
@@ -16,6 +34,8 @@ class DittoEventManagementTest {
     @Mock
     private Context mockContext = mock(Context.class, Answers.RETURNS_DEEP_STUBS);
 
+    private final Sources sources = mock(Sources.class);
+
     // Requires eclipse ditto to be running
     @Test
     void process() throws Exception {
@@ -32,4 +52,121 @@ class DittoEventManagementTest {
         driver.initialize(mockContext);
         driver.process("ma-pulsar-kafka:febr-9401", mockContext);
     }
-}
\ No newline at end of file
+
+    @Test
+    void topologyIsBuiltFromOneRetrieve() throws Exception {
+        try (FakeDittoServer server = new FakeDittoServer(Path.of("src/test/resources/wot"))) {
+            putSensor(server, "{\"temperature\": 20}");
+
+            var management = start(server);
+            management.close();
+
+            ArgumentCaptor<SourceConfig> config = ArgumentCaptor.forClass(SourceConfig.class);
+            verify(sources).createSourceWithUrlAsync(config.capture(), anyString());
+
+            assertEquals("mqtt-test-sensor-source", config.getValue().getName());
+            assertEquals(Map.of("propertyFeatureMapping", "temperature=sensor;", "thingId", "test:sensor"),
+                    config.getValue().getConfigs().get("additionalProperties"));
+            assertEquals(1, server.commandCount());
+        }
+    }
+
+    @Test
+    void sourceIsUpdatedWhenThePropertiesChange() throws Exception {
+        try (FakeDittoServer server = new FakeDittoServer(Path.of("src/test/resources/wot"))) {
+            putSensor(server, "{\"temperature\": 20}");
+            var management = start(server);
+
+            putSensor(server, "{\"temperature\": 20, \"humidity\": 40}");
+
+            ArgumentCaptor<SourceConfig> config = ArgumentCaptor.forClass(SourceConfig.class);
+            verify(sources, timeout(5000)).updateSourceWithUrlAsync(config.capture(), anyString());
+            management.close();
+
+            var mapping = ((Map<?, ?>) config.getValue().getConfigs().get("additionalProperties")).get("propertyFeatureMapping").toString();
+            assertTrue(mapping.contains("temperature=sensor;"));
+            assertTrue(mapping.contains("humidity=sensor;"));
+        }
+    }
+
+    @Test
+    void sourceIsDeletedWithTheThing() throws Exception {
+        try (FakeDittoServer server = new FakeDittoServer(Path.of("src/test/resources/wot"))) {
+            putSensor(server, "{\"temperature\": 20}");
+            var management = start(server);
+
+            server.deleteThing("test:sensor");
+
+            verify(sources, timeout(5000)).deleteSourceAsync("public", "default", "mqtt-test-sensor-source");
+            management.close();
+        }
+    }
+
+    @Test
+    void onlyStructuralChangesAffectTheTopology() {
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.UPDATED, JsonPointer.empty()));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.DELETED, JsonPointer.empty()));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.UPDATED, JsonPointer.of("/definition")));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.MERGED, JsonPointer.of("/features")));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.DELETED, JsonPointer.of("/features/sensor")));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.UPDATED, JsonPointer.of("/features/sensor/properties")));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.CREATED, JsonPointer.of("/features/sensor/properties/humidity")));
+        assertTrue(DittoEventManagement.AffectsTopology(ChangeAction.DELETED, JsonPointer.of("/features/sensor/properties/humidity")));
+
+        assertFalse(DittoEventManagement.AffectsTopology(ChangeAction.UPDATED, JsonPointer.of("/features/sensor/properties/humidity")));
+        assertFalse(DittoEventManagement.AffectsTopology(ChangeAction.MERGED, JsonPointer.of("/features/sensor/properties/humidity")));
+        assertFalse(DittoEventManagement.AffectsTopology(ChangeAction.CREATED, JsonPointer.of("/features/sensor/properties/location/x")));
+        assertFalse(DittoEventManagement.AffectsTopology(ChangeAction.UPDATED, JsonPointer.of("/features/sensor/definition")));
+        assertFalse(DittoEventManagement.AffectsTopology(ChangeAction.UPDATED, JsonPointer.of("/attributes/location")));
+    }
+
+    @Test
+    void valueWritesOfKnownPropertiesDoNotChangeTheKeys() {
+        Set<String> known = Set.of("temperature", "humidity");
+
+        // A batch of the sink
+        assertFalse(DittoEventManagement.ChangesPropertyKeys(ChangeAction.MERGED,
+                Optional.of(JsonFactory.readFrom("{\"temperature\": 21.5}")), known));
+        assertFalse(DittoEventManagement.ChangesPropertyKeys(ChangeAction.UPDATED,
+                Optional.of(JsonFactory.readFrom("{\"temperature\": 21.5, \"humidity\": 40}")), known));
+
+        assertTrue(DittoEventManagement.ChangesPropertyKeys(ChangeAction.MERGED,
+                Optional.of(JsonFactory.readFrom("{\"pressure\": 1013}")), known));
+        assertTrue(DittoEventManagement.ChangesPropertyKeys(ChangeAction.MERGED,
+                Optional.of(JsonFactory.readFrom("{\"humidity\": null}")), known));
+        assertTrue(DittoEventManagement.ChangesPropertyKeys(ChangeAction.UPDATED,
+                Optional.of(JsonFactory.readFrom("{\"temperature\": 21.5}")), known));
+        // Thing or feature without known properties
+        assertTrue(DittoEventManagement.ChangesPropertyKeys(ChangeAction.MERGED,
+                Optional.of(JsonFactory.readFrom("{\"temperature\": 21.5}")), null));
+    }
+
+    private static void putSensor(FakeDittoServer server, String properties) {
+        server.putThing("test:sensor", JsonFactory.readFrom("{\"definition\": \"" + server.descriptionUrl("load-sensor.jsonld") + "\", " +
+                "\"features\": {\"sensor\": {\"properties\": " + properties + "}, \"status\": {\"definition\": [\"a:b:1\"]}}}").asObject());
+    }
+
+    // Starts the function against the fake server with test:sensor as initial thing and stubbed Pulsar admin sources
+    private DittoEventManagement start(FakeDittoServer server) throws Exception {
+        Context context = mock(Context.class);
+        PulsarAdmin admin = mock(PulsarAdmin.class);
+        when(context.getPulsarAdmin()).thenReturn(admin);
+        when(admin.sources()).thenReturn(sources);
+        when(sources.listSourcesAsync("public", "default")).thenReturn(CompletableFuture.completedFuture(List.of()));
+        when(sources.createSourceWithUrlAsync(any(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        when(sources.updateSourceWithUrlAsync(any(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        when(sources.deleteSourceAsync(anyString(), anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("dittoUsername", "ditto");
+        properties.put("dittoPassword", "ditto");
+        properties.put("websocketEndpoint", server.endpoint());
+        properties.put("thingIds", "test:sensor");
+        properties.put("reconcileDebounceMillis", 10);
+        when(context.getUserConfigMap()).thenReturn(properties);
+
+        var management = new DittoEventManagement();
+        management.initialize(context);
+        return management;
+    }
+}
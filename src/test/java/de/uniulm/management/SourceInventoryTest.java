@@ -0,0 +1,100 @@
+package de.uniulm.management;
+
+import org.apache.pulsar.client.admin.PulsarAdmin;
+import org.apache.pulsar.client.admin.PulsarAdminException;
+import org.apache.pulsar.client.admin.Sources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SourceInventoryTest {
+
+    private final PulsarAdmin admin = mock(PulsarAdmin.class);
+    private final Sources sources = mock(Sources.class);
+
+    @BeforeEach
+    void setUp() {
+        when(admin.sources()).thenReturn(sources);
+        when(sources.listSourcesAsync("public", "default"))
+                .thenReturn(CompletableFuture.completedFuture(List.of("mqtt-ns-existing-source")));
+    }
+
+    @Test
+    void sourcesAreListedOnce() {
+        var inventory = new SourceInventory(admin, "public", "default", Duration.ofMinutes(5));
+
+        assertFalse(inventory.reserve("mqtt-ns-existing-source").join());
+        assertTrue(inventory.reserve("mqtt-ns-new-source").join());
+        assertFalse(inventory.reserve("mqtt-ns-existing-source").join());
+
+        verify(sources, times(1)).listSourcesAsync("public", "default");
+    }
+
+    @Test
+    void sourceIsReservedOnce() {
+        var inventory = new SourceInventory(admin, "public", "default", Duration.ofMinutes(5));
+
+        assertTrue(inventory.reserve("mqtt-ns-new-source").join());
+        assertFalse(inventory.reserve("mqtt-ns-new-source").join());
+    }
+
+    @Test
+    void createdSourceIsKnown() {
+        var inventory = new SourceInventory(admin, "public", "default", Duration.ofMinutes(5));
+
+        assertTrue(inventory.reserve("mqtt-ns-new-source").join());
+        inventory.create("mqtt-ns-new-source", () -> CompletableFuture.completedFuture(null)).join();
+
+        assertTrue(inventory.contains("mqtt-ns-new-source"));
+        assertFalse(inventory.reserve("mqtt-ns-new-source").join());
+    }
+
+    @Test
+    void conflictCountsAsCreated() {
+        var inventory = new SourceInventory(admin, "public", "default", Duration.ofMinutes(5));
+
+        inventory.reserve("mqtt-ns-new-source").join();
+        inventory.create("mqtt-ns-new-source", () -> CompletableFuture.failedFuture(
+                new PulsarAdminException.ConflictException(new RuntimeException("Source already exists")))).join();
+
+        assertTrue(inventory.contains("mqtt-ns-new-source"));
+    }
+
+    @Test
+    void failedCreationReleasesTheReservation() {
+        var inventory = new SourceInventory(admin, "public", "default", Duration.ofMinutes(5));
+
+        inventory.reserve("mqtt-ns-new-source").join();
+        var created = inventory.create("mqtt-ns-new-source",
+                () -> CompletableFuture.failedFuture(new IllegalStateException("Worker unavailable")));
+
+        assertThrows(CompletionException.class, created::join);
+        assertFalse(inventory.contains("mqtt-ns-new-source"));
+        assertTrue(inventory.reserve("mqtt-ns-new-source").join());
+    }
+
+    @Test
+    void staleInventoryIsFetchedAgain() {
+        var inventory = new SourceInventory(admin, "public", "default", Duration.ZERO);
+
+        inventory.reserve("mqtt-ns-new-source").join();
+        inventory.create("mqtt-ns-new-source", () -> CompletableFuture.completedFuture(null)).join();
+
+        when(sources.listSourcesAsync("public", "default"))
+                .thenReturn(CompletableFuture.completedFuture(List.of("mqtt-ns-other-source")));
+        inventory.reserve("mqtt-ns-third-source").join();
+
+        verify(sources, atLeast(2)).listSourcesAsync("public", "default");
+        assertTrue(inventory.contains("mqtt-ns-other-source"));
+        // Deleted by someone else
+        assertFalse(inventory.contains("mqtt-ns-existing-source"));
+        assertFalse(inventory.contains("mqtt-ns-new-source"));
+    }
+}
@@ -1,5 +1,6 @@
 package de.uniulm.processor;
 
+import de.uniulm.ditto.FeatureUpdate;
 import org.apache.pulsar.client.api.MessageId;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.TypedMessageBuilder;
@@ -7,14 +8,19 @@ import org.apache.pulsar.functions.api.Context;
 import org.apache.pulsar.functions.api.Record;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 
+import java.io.IOException;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -29,8 +35,16 @@ class ByteToJsonProcessorTest {
     @Mock
     private TypedMessageBuilder<String> mockStringTypedMessageBuilder = mock(TypedMessageBuilder.class);
 
+    @Mock
+    private TypedMessageBuilder<Object> mockObjectTypedMessageBuilder = mock(TypedMessageBuilder.class);
+
     @BeforeEach
     void setUp() {
+        when(mockContext.newOutputMessage(anyString(), any())).thenReturn(mockObjectTypedMessageBuilder);
+        when(mockObjectTypedMessageBuilder.value(any())).thenReturn(mockObjectTypedMessageBuilder);
+        when(mockObjectTypedMessageBuilder.key(any())).thenReturn(mockObjectTypedMessageBuilder);
+        when(mockObjectTypedMessageBuilder.eventTime(anyLong())).thenReturn(mockObjectTypedMessageBuilder);
+        when(mockObjectTypedMessageBuilder.sendAsync()).thenReturn(CompletableFuture.completedFuture(MessageId.latest));
     }
 
     @Test
@@ -81,4 +95,172 @@ class ByteToJsonProcessorTest {
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void processFeatureUpdates() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(ByteToJsonProcessorRequiredProperties.THING_ID.propertyName, "test:test");
+        properties.put(ByteToJsonProcessorRequiredProperties.PROPERTY_FEATURE_MAPPING.propertyName, "myValue=feature1;mySecondValue=feature2;myThirdValue=feature1");
+
+        String jsonInput = "{\"myValue\": 12, \"mySecondValue\": \"anyValue\", \"myThirdValue\": true}";
+
+        when(mockRecord.getProperties()).thenReturn(properties);
+        when(mockRecord.getEventTime()).thenReturn(Optional.of(42L));
+
+        when(mockContext.getCurrentRecord()).thenReturn((Record) mockRecord);
+        when(mockContext.getOutputTopic()).thenReturn("topic");
+        when(mockContext.getUserConfigValueOrDefault(eq("outputFormat"), any())).thenReturn("featureUpdate");
+
+        new ByteToJsonProcessor().process(jsonInput.getBytes(), mockContext);
+
+        ArgumentCaptor<Object> values = ArgumentCaptor.forClass(Object.class);
+        verify(mockObjectTypedMessageBuilder, atLeastOnce()).value(values.capture());
+        verify(mockContext, never()).newOutputMessage(anyString(), eq(Schema.STRING));
+
+        List<FeatureUpdate> updates = values.getAllValues().stream()
+                .filter(FeatureUpdate.class::isInstance)
+                .map(FeatureUpdate.class::cast)
+                .sorted(Comparator.comparing(FeatureUpdate::getFeatureId))
+                .toList();
+
+        assertEquals(2, updates.size());
+        assertEquals("feature1", updates.get(0).getFeatureId());
+        assertEquals(Map.of("myValue", 12, "myThirdValue", true), updates.get(0).getProperties());
+        assertEquals(Map.of("mySecondValue", "anyValue"), updates.get(1).getProperties());
+        assertEquals("test:test", updates.get(1).getThingId());
+        assertEquals(42L, updates.get(1).getTimestamp());
+    }
+
+    @Test
+    void readStreamingKeepsTypesAndOrder() throws Exception {
+        String jsonInput = "{\"a\": 12, \"b\": 1.5, \"c\": \"text\", \"d\": false, \"e\": null, \"f\": {\"x\": [1, 2]}}";
+
+        Map<String, Object> fields = ByteToJsonProcessor.readStreaming(jsonInput.getBytes());
+
+        assertEquals(List.of("a", "b", "c", "d", "e", "f"), List.copyOf(fields.keySet()));
+        assertEquals(12, fields.get("a"));
+        assertEquals(1.5, fields.get("b"));
+        assertEquals("text", fields.get("c"));
+        assertEquals(false, fields.get("d"));
+        assertNull(fields.get("e"));
+        assertEquals(Map.of("x", List.of(1, 2)), fields.get("f"));
+    }
+
+    @Test
+    void readStreamingRejectsInvalidJson() {
+        assertThrows(IOException.class, () -> ByteToJsonProcessor.readStreaming("[1, 2]".getBytes()));
+        assertThrows(IOException.class, () -> ByteToJsonProcessor.readStreaming("{\"a\": 1".getBytes()));
+    }
+
+    @Test
+    void recordIsAckedOnceAfterAllOutputs() throws Exception {
+        CompletableFuture<MessageId> pendingSend = new CompletableFuture<>();
+        stubTwoFieldRecord(pendingSend);
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        verify(mockRecord, never()).ack();
+
+        pendingSend.complete(MessageId.latest);
+
+        verify(mockRecord, times(1)).ack();
+        verify(mockRecord, never()).fail();
+    }
+
+    @Test
+    void recordIsFailedOnceIfAnOutputFails() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.failedFuture(new IllegalStateException("producer closed")));
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        verify(mockRecord, times(1)).fail();
+        verify(mockRecord, never()).ack();
+    }
+
+    private void stubTwoFieldRecord(CompletableFuture<MessageId> send) {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(ByteToJsonProcessorRequiredProperties.THING_ID.propertyName, "test:test");
+        properties.put(ByteToJsonProcessorRequiredProperties.PROPERTY_FEATURE_MAPPING.propertyName, "myValue=feature1;mySecondValue=feature2");
+
+        when(mockRecord.getProperties()).thenReturn(properties);
+        when(mockContext.getCurrentRecord()).thenReturn((Record) mockRecord);
+        when(mockContext.getOutputTopic()).thenReturn("topic");
+        when(mockContext.<String>newOutputMessage(anyString(), eq(Schema.STRING)))
+                .thenReturn(mockStringTypedMessageBuilder);
+
+        when(mockStringTypedMessageBuilder.properties(any())).thenReturn(mockStringTypedMessageBuilder);
+        when(mockStringTypedMessageBuilder.key(any())).thenReturn(mockStringTypedMessageBuilder);
+        when(mockStringTypedMessageBuilder.eventTime(anyLong())).thenReturn(mockStringTypedMessageBuilder);
+        when(mockStringTypedMessageBuilder.value(anyString())).thenReturn(mockStringTypedMessageBuilder);
+        when(mockStringTypedMessageBuilder.sendAsync())
+                .thenReturn(CompletableFuture.completedFuture(MessageId.latest))
+                .thenReturn(send);
+    }
+
+    @Test
+    void eventTimeOfTheInputIsForwarded() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.completedFuture(MessageId.latest));
+        when(mockRecord.getEventTime()).thenReturn(Optional.of(42L));
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        verify(mockStringTypedMessageBuilder, times(2)).eventTime(42L);
+        verify(mockObjectTypedMessageBuilder).eventTime(42L);
+    }
+
+    @Test
+    void eventTimeOfFeatureUpdatesIsForwarded() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.completedFuture(MessageId.latest));
+        when(mockRecord.getEventTime()).thenReturn(Optional.of(42L));
+        when(mockContext.getUserConfigValueOrDefault(eq("outputFormat"), any())).thenReturn("featureUpdate");
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        // Two feature updates and the influx record
+        verify(mockObjectTypedMessageBuilder, times(3)).eventTime(42L);
+    }
+
+    @Test
+    void messagesAreKeyedByThingByDefault() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.completedFuture(MessageId.latest));
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        verify(mockStringTypedMessageBuilder, times(2)).key("test:test");
+        verify(mockObjectTypedMessageBuilder).key("test:test");
+    }
+
+    @Test
+    void messagesCanBeKeyedByFeature() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.completedFuture(MessageId.latest));
+        when(mockContext.getUserConfigValueOrDefault(eq("routingKey"), any())).thenReturn("feature");
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        verify(mockStringTypedMessageBuilder).key("test:test/feature1");
+        verify(mockStringTypedMessageBuilder).key("test:test/feature2");
+    }
+
+    @Test
+    void messagesCanBeSentWithoutKey() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.completedFuture(MessageId.latest));
+        when(mockContext.getUserConfigValueOrDefault(eq("routingKey"), any())).thenReturn("none");
+
+        new ByteToJsonProcessor().process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+
+        verify(mockStringTypedMessageBuilder, never()).key(any());
+    }
+
+    @Test
+    void userConfigIsReadOnce() throws Exception {
+        stubTwoFieldRecord(CompletableFuture.completedFuture(MessageId.latest));
+        var processor = new ByteToJsonProcessor();
+
+        processor.process("{\"myValue\": 12, \"mySecondValue\": 13}".getBytes(), mockContext);
+        processor.process("{\"myValue\": 14, \"mySecondValue\": 15}".getBytes(), mockContext);
+
+        verify(mockContext, times(1)).getUserConfigValueOrDefault(eq("outputFormat"), any());
+        verify(mockContext, times(1)).getUserConfigValueOrDefault(eq("routingKey"), any());
+        verify(mockStringTypedMessageBuilder, times(4)).sendAsync();
+    }
+}
@@ -0,0 +1,69 @@
+package de.uniulm.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InfluxLineProtocolBatcherTest {
+
+    private final List<byte[]> sent = new CopyOnWriteArrayList<>();
+
+    private InfluxLineProtocolBatcher batcher(int maxPoints, long lingerMillis, boolean compress) {
+        return new InfluxLineProtocolBatcher((payload, eventTime) -> {
+            sent.add(payload);
+            return CompletableFuture.completedFuture(null);
+        }, maxPoints, 1 << 20, lingerMillis, compress);
+    }
+
+    @Test
+    void fullBatchIsSentAsOneMessage() {
+        try (var batcher = batcher(3, 60_000, false)) {
+            var first = batcher.add("a x=1i 1\n", 1, 1);
+            var second = batcher.add("a x=2i 2\nb x=3i 2\n", 2, 2);
+
+            assertTrue(first.isDone());
+            assertSame(first, second);
+            assertEquals(1, sent.size());
+            assertEquals("a x=1i 1\na x=2i 2\nb x=3i 2\n", new String(sent.get(0), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void batchIsSentAfterLinger() throws Exception {
+        try (var batcher = batcher(100, 10, false)) {
+            batcher.add("a x=1i 1\n", 1, 1).get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, sent.size());
+        }
+    }
+
+    @Test
+    void pendingPointsAreSentOnClose() {
+        var batcher = batcher(100, 60_000, false);
+        var completion = batcher.add("a x=1i 1\n", 1, 1);
+
+        batcher.close();
+
+        assertTrue(completion.isDone());
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    void batchCanBeCompressed() throws Exception {
+        try (var batcher = batcher(1, 60_000, true)) {
+            batcher.add("a x=1i 1\n", 1, 1);
+        }
+
+        try (var gzip = new GZIPInputStream(new ByteArrayInputStream(sent.get(0)))) {
+            assertEquals("a x=1i 1\n", new String(gzip.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+}
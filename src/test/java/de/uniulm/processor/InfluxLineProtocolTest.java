@@ -0,0 +1,51 @@
+package de.uniulm.processor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InfluxLineProtocolTest {
+
+    @Test
+    void encodesTagsAndTypedFields() {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("count", 12);
+        fields.put("temperature", 21.5);
+        fields.put("open", true);
+        fields.put("state", "say \"hi\"");
+        fields.put("missing", null);
+        fields.put("values", List.of(1, 2));
+
+        StringBuilder builder = new StringBuilder();
+        Map<String, String> tags = new LinkedHashMap<>();
+        tags.put("thingId", "factory:oven 1");
+        tags.put("featureId", "a=b");
+
+        assertTrue(InfluxLineProtocol.appendPoint(builder, "ditto", tags, fields, 42));
+        assertEquals("ditto,thingId=factory:oven\\ 1,featureId=a\\=b count=12i,temperature=21.5,open=true," +
+                "state=\"say \\\"hi\\\"\",values=\"[1,2]\" 42\n", builder.toString());
+    }
+
+    @Test
+    void skipsPointsWithoutFields() {
+        StringBuilder builder = new StringBuilder("existing\n");
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("missing", null);
+
+        assertFalse(InfluxLineProtocol.appendPoint(builder, "ditto", Map.of("thingId", "a:b"), fields, 42));
+        assertEquals("existing\n", builder.toString());
+    }
+
+    @Test
+    void omitsEmptyTags() {
+        StringBuilder builder = new StringBuilder();
+
+        InfluxLineProtocol.appendPoint(builder, "ditto", Map.of("featureId", ""), Map.of("a", 1.0), 1);
+
+        assertEquals("ditto a=1.0 1\n", builder.toString());
+    }
+}
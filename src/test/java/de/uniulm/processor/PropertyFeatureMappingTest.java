@@ -0,0 +1,42 @@
+package de.uniulm.processor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyFeatureMappingTest {
+
+    @Test
+    void fieldsAreMatchedCaseInsensitively() {
+        PropertyFeatureMapping mapping = PropertyFeatureMapping.of("myValue=feature1;mySecondValue=feature2");
+
+        assertEquals("feature1", mapping.featureIdOf("myValue"));
+        assertEquals("feature1", mapping.featureIdOf("MYVALUE"));
+        assertEquals("feature2", mapping.featureIdOf("mysecondvalue"));
+        assertNull(mapping.featureIdOf("unknown"));
+    }
+
+    @Test
+    void compiledMappingIsReused() {
+        assertSame(PropertyFeatureMapping.of("a=feature1"), PropertyFeatureMapping.of("a=feature1"));
+    }
+
+    @Test
+    void invalidMappingIsRejected() {
+        assertNull(PropertyFeatureMapping.of("a=feature1;b"));
+        assertNull(PropertyFeatureMapping.of("a=feature1;b"));
+    }
+
+    @Test
+    void outgoingPropertiesAreReused() {
+        PropertyFeatureMapping mapping = PropertyFeatureMapping.of("temperature=sensor");
+
+        var properties = mapping.outgoingProperties("test:test", "temperature", "sensor");
+
+        assertSame(properties, mapping.outgoingProperties("test:test", "temperature", "sensor"));
+        assertEquals("test:test", properties.get("thingId"));
+        assertEquals("sensor", properties.get("featureId"));
+        assertEquals("temperature", properties.get("property"));
+        assertNotSame(properties, mapping.outgoingProperties("test:other", "temperature", "sensor"));
+    }
+}
@@ -0,0 +1,180 @@
+package de.uniulm.util;
+
+import org.eclipse.ditto.base.model.exceptions.TooManyRequestsException;
+import org.eclipse.ditto.client.DittoClient;
+import org.eclipse.ditto.things.model.ThingId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DittoClientPoolTest {
+
+    private final List<DittoClient> opened = new CopyOnWriteArrayList<>();
+    private DittoClientPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void thingsAreSpreadOverAllMembers() {
+        for (DittoClientPool.HashingStrategy strategy : DittoClientPool.HashingStrategy.values()) {
+            pool = new DittoClientPool(4, strategy, this::connect);
+            Map<DittoClient, Integer> things = new HashMap<>();
+
+            for (int i = 0; i < 4000; i++) {
+                things.merge(pool.clientFor(thing(i)), 1, Integer::sum);
+            }
+
+            assertEquals(4, things.size(), strategy.name());
+            things.values().forEach(count -> assertTrue(count > 500, strategy + " routed " + count + " things to a member"));
+            pool.close();
+            opened.clear();
+        }
+        pool = null;
+    }
+
+    @Test
+    void thingAlwaysUsesTheSameMember() {
+        pool = new DittoClientPool(4, DittoClientPool.HashingStrategy.CONSISTENT, this::connect);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(pool.clientFor(thing(i)), pool.clientFor(thing(i)));
+        }
+    }
+
+    @Test
+    void failingMemberIsSkippedUntilItIsReconnected() throws Exception {
+        pool = new DittoClientPool(2, DittoClientPool.HashingStrategy.CONSISTENT, this::connect, 20, 1000);
+        ThingId thing = thing(0);
+        DittoClient failing = pool.clientFor(thing);
+
+        for (int i = 0; i < 5; i++) {
+            pool.report(thing, new IOException("connection reset"));
+        }
+
+        assertEquals(1, pool.healthyMembers());
+        assertNotSame(failing, pool.clientFor(thing));
+
+        awaitHealthy(2);
+        DittoClient reconnected = pool.clientFor(thing);
+        assertNotSame(failing, reconnected);
+        assertSame(opened.get(2), reconnected);
+        verify(failing, timeout(1000)).destroy();
+    }
+
+    @Test
+    void errorResponsesOfDittoDoNotCountAsFailures() {
+        pool = new DittoClientPool(2, DittoClientPool.HashingStrategy.CONSISTENT, this::connect, 20, 1000);
+
+        for (int i = 0; i < 10; i++) {
+            pool.report(thing(0), TooManyRequestsException.newBuilder().build());
+        }
+
+        assertEquals(2, pool.healthyMembers());
+    }
+
+    @Test
+    void failedReconnectsBackOff() throws Exception {
+        AtomicInteger connects = new AtomicInteger();
+        pool = new DittoClientPool(2, DittoClientPool.HashingStrategy.CONSISTENT, () -> {
+            if (connects.incrementAndGet() > 2) {
+                throw new IllegalStateException("Ditto is down");
+            }
+            return connect();
+        }, 20, 1000);
+
+        for (int i = 0; i < 5; i++) {
+            pool.report(thing(0), new IOException("connection reset"));
+        }
+        Thread.sleep(1200);
+
+        // First attempt after 500 ms, the second one 1000 ms later
+        assertEquals(3, connects.get());
+        assertEquals(1, pool.healthyMembers());
+    }
+
+    @Test
+    void hangingReconnectDoesNotHoldUpTheOtherMembers() throws Exception {
+        CountDownLatch hanging = new CountDownLatch(1);
+        AtomicInteger connects = new AtomicInteger();
+        List<DittoClient> late = new CopyOnWriteArrayList<>();
+
+        pool = new DittoClientPool(2, DittoClientPool.HashingStrategy.CONSISTENT, () -> {
+            // The first reconnect hangs until the end of the test
+            if (connects.incrementAndGet() == 3) {
+                try {
+                    hanging.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                DittoClient client = mock(DittoClient.class);
+                late.add(client);
+                return client;
+            }
+            return connect();
+        }, 20, 200);
+
+        markAllUnhealthy();
+        assertEquals(0, pool.healthyMembers());
+
+        awaitHealthy(2);
+        hanging.countDown();
+
+        // The connection that opened after its timeout is closed again
+        while (late.isEmpty()) {
+            Thread.sleep(10);
+        }
+        verify(late.get(0), timeout(5000)).destroy();
+    }
+
+    @Test
+    void poolWithoutAnyConnectionCannotBeOpened() {
+        Supplier<DittoClient> down = () -> {
+            throw new IllegalStateException("Ditto is down");
+        };
+
+        assertThrows(IllegalStateException.class,
+                () -> new DittoClientPool(2, DittoClientPool.HashingStrategy.CONSISTENT, down));
+    }
+
+    private DittoClient connect() {
+        DittoClient client = mock(DittoClient.class);
+        opened.add(client);
+        return client;
+    }
+
+    // Reports failures for things of every member until none is healthy
+    private void markAllUnhealthy() {
+        for (int i = 0; pool.healthyMembers() > 0 && i < 10_000; i++) {
+            pool.report(thing(i % 100), new IOException("connection reset"));
+        }
+    }
+
+    private void awaitHealthy(int members) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (pool.healthyMembers() < members && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(members, pool.healthyMembers());
+    }
+
+    private static ThingId thing(int i) {
+        return ThingId.of("test:thing-" + i);
+    }
+}
@@ -0,0 +1,35 @@
+package de.uniulm.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsCoverTheirValues() {
+        for (long micros : new long[]{0, 1, 31, 32, 63, 64, 1000, 123_456, 10_000_000_000L}) {
+            int index = LatencyHistogram.indexOf(micros);
+
+            assertTrue(LatencyHistogram.upperBoundMicros(index) >= micros);
+            assertTrue(index == 0 || LatencyHistogram.upperBoundMicros(index - 1) < micros);
+        }
+    }
+
+    @Test
+    void percentilesAreWithinRelativeError() {
+        var histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordMillis(i);
+        }
+
+        var snapshot = histogram.snapshotAndReset();
+
+        assertEquals(1000, snapshot.count());
+        assertEquals(500, snapshot.percentileMillis(50), 500 * 0.04);
+        assertEquals(990, snapshot.percentileMillis(99), 990 * 0.04);
+        assertEquals(1000, snapshot.maxMillis(), 1000 * 0.04);
+        assertEquals(0, histogram.snapshotAndReset().count());
+    }
+}
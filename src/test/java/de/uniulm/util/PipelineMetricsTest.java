@@ -0,0 +1,52 @@
+package de.uniulm.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineMetricsTest {
+
+    private final Map<String, Double> published = new HashMap<>();
+
+    @Test
+    void countersPublishTheirDelta() {
+        try (var metrics = new PipelineMetrics(published::put, Duration.ofHours(1))) {
+            metrics.increment("updates");
+            metrics.count("updates", 2);
+            metrics.publish();
+
+            assertEquals(3, published.get("updates"));
+
+            published.clear();
+            metrics.publish();
+
+            assertFalse(published.containsKey("updates"));
+        }
+    }
+
+    @Test
+    void histogramsPublishPercentiles() {
+        try (var metrics = new PipelineMetrics(published::put, Duration.ofHours(1))) {
+            metrics.histogram("latency_ms").recordMillis(10);
+            metrics.publish();
+
+            assertEquals(10, published.get("latency_ms_p50"), 0.5);
+            assertEquals(10, published.get("latency_ms_max"), 0.5);
+            assertEquals(1, published.get("latency_ms_count"));
+        }
+    }
+
+    @Test
+    void gaugesPublishTheirCurrentValue() {
+        try (var metrics = new PipelineMetrics(published::put, Duration.ofHours(1))) {
+            metrics.gauge("in_flight", () -> 7);
+            metrics.publish();
+
+            assertEquals(7, published.get("in_flight"));
+        }
+    }
+}
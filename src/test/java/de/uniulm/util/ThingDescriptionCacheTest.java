@@ -0,0 +1,111 @@
+package de.uniulm.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThingDescriptionCacheTest {
+
+    private static final String DESCRIPTION = "{\"title\": \"febr B\u00fcro\", \"properties\": {\"co2ppm\": {\"type\": \"number\"}}}";
+
+    private final List<String> receivedEtags = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/definitions/febr.jsonld", exchange -> {
+            String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            receivedEtags.add(String.valueOf(etag));
+
+            if ("\"v1\"".equals(etag)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = DESCRIPTION.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/definitions/febr.jsonld";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void descriptionIsFetchedOnce() {
+        var cache = new ThingDescriptionCache(HttpClient.newHttpClient());
+
+        var first = cache.get(url).join();
+        var second = cache.get(url).join();
+
+        assertSame(first, second);
+        assertEquals(1, receivedEtags.size());
+        assertTrue(first.getProperties().orElseThrow().getProperty("co2ppm").isPresent());
+    }
+
+    @Test
+    void staleDescriptionIsServedAndRevalidated() throws InterruptedException {
+        var cache = new ThingDescriptionCache(HttpClient.newHttpClient());
+        cache.configure(ThingDescriptionCache.DEFAULT_MAX_WEIGHT_BYTES, Duration.ZERO);
+
+        var first = cache.get(url).join();
+        var stale = cache.get(url);
+
+        assertTrue(stale.isDone());
+        assertSame(first, stale.join());
+
+        for (int i = 0; i < 50 && receivedEtags.size() < 2; i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(List.of("null", "\"v1\""), receivedEtags);
+    }
+
+    @Test
+    void weightIsTheByteLengthOfTheDescription() {
+        var cache = new ThingDescriptionCache(HttpClient.newHttpClient());
+
+        cache.get(url).join();
+
+        assertEquals(DESCRIPTION.getBytes(StandardCharsets.UTF_8).length, cache.weight());
+        assertTrue(cache.weight() > DESCRIPTION.length());
+    }
+
+    @Test
+    void invalidatedDescriptionDoesNotCountAfterItsRevalidation() throws InterruptedException {
+        var cache = new ThingDescriptionCache(HttpClient.newHttpClient());
+        cache.configure(ThingDescriptionCache.DEFAULT_MAX_WEIGHT_BYTES, Duration.ZERO);
+
+        cache.get(url).join();
+        // Starts a revalidation, the description is removed while it runs
+        cache.get(url).join();
+        cache.invalidate(url);
+        assertEquals(0, cache.weight());
+
+        for (int i = 0; i < 50 && receivedEtags.size() < 2; i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(100);
+
+        assertEquals(0, cache.weight());
+        assertEquals(0, cache.size());
+    }
+}
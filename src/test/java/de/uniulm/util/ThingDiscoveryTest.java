@@ -0,0 +1,128 @@
+package de.uniulm.util;
+
+import org.eclipse.ditto.things.model.Thing;
+import org.eclipse.ditto.things.model.ThingId;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThingDiscoveryTest {
+
+    private final Map<ThingId, CompletableFuture<Void>> builds = new ConcurrentHashMap<>();
+    private final AtomicInteger requestedPages = new AtomicInteger();
+    private boolean cancelled;
+
+    private final Subscription subscription = new Subscription() {
+        @Override
+        public void request(long n) {
+            requestedPages.addAndGet((int) n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    };
+
+    @Test
+    void nextPageIsRequestedOnceTheQueueRunsLow() {
+        var discovery = new ThingDiscovery(this::build, 2);
+
+        discovery.onSubscribe(subscription);
+        assertEquals(1, requestedPages.get());
+
+        discovery.onNext(page(0, 4));
+        // Two builds in flight, two things queued
+        assertEquals(2, builds.size());
+        assertEquals(1, requestedPages.get());
+
+        builds.get(ThingId.of("ns:thing-0")).complete(null);
+        assertEquals(3, builds.size());
+        assertEquals(2, requestedPages.get());
+    }
+
+    @Test
+    void pageLargerThanConcurrencyIsProcessedInSlots() {
+        var discovery = new ThingDiscovery(this::build, 3);
+        int peak = 0;
+
+        int delivered = 0;
+
+        discovery.onSubscribe(subscription);
+
+        while (!discovery.done().isDone()) {
+            // Two pages of ten things, delivered as requested
+            if (requestedPages.get() > delivered) {
+                if (delivered < 2) {
+                    discovery.onNext(page(delivered * 10, 10));
+                } else {
+                    discovery.onComplete();
+                }
+                delivered++;
+                continue;
+            }
+
+            List<CompletableFuture<Void>> running = builds.values().stream().filter(build -> !build.isDone()).toList();
+            peak = Math.max(peak, running.size());
+            running.get(0).complete(null);
+        }
+
+        assertEquals(3, peak);
+        assertEquals(20, builds.size());
+        assertEquals(new ThingDiscovery.Result(20, 0), discovery.done().join());
+    }
+
+    @Test
+    void doneOnceSearchAndBuildsFinished() {
+        var discovery = new ThingDiscovery(this::build, 4);
+
+        discovery.onSubscribe(subscription);
+        discovery.onNext(page(0, 2));
+        discovery.onComplete();
+        assertFalse(discovery.done().isDone());
+
+        builds.get(ThingId.of("ns:thing-0")).complete(null);
+        builds.get(ThingId.of("ns:thing-1")).completeExceptionally(new IllegalStateException("No definition"));
+
+        assertEquals(new ThingDiscovery.Result(2, 1), discovery.done().join());
+    }
+
+    @Test
+    void failedSearchEndsDiscovery() {
+        var discovery = new ThingDiscovery(this::build, 4);
+
+        discovery.onSubscribe(subscription);
+        discovery.onError(new IllegalStateException("Search unavailable"));
+
+        assertEquals(new ThingDiscovery.Result(0, 0), discovery.done().join());
+    }
+
+    @Test
+    void cancelStopsTheSearch() {
+        var discovery = new ThingDiscovery(this::build, 4);
+
+        discovery.onSubscribe(subscription);
+        discovery.cancel();
+
+        assertTrue(cancelled);
+        assertTrue(discovery.done().isDone());
+    }
+
+    private CompletableFuture<Void> build(Thing thing) {
+        return builds.computeIfAbsent(thing.getEntityId().orElseThrow(), id -> new CompletableFuture<>());
+    }
+
+    private static List<Thing> page(int from, int size) {
+        return IntStream.range(from, from + size)
+                .mapToObj(i -> Thing.newBuilder().setId(ThingId.of("ns:thing-" + i)).build())
+                .toList();
+    }
+}